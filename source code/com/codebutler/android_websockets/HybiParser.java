@@ -31,6 +31,7 @@
 package com.codebutler.android_websockets;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -200,6 +201,62 @@ public class HybiParser {
         int masked = mMasking ? MASK : 0;
         byte[] frame = new byte[length + offset];
 
+        writeHeader(frame, opcode, masked, length);
+
+        if (errorCode > 0) {
+            frame[offset] = (byte) (((int) Math.floor(errorCode / 256)) & BYTE);
+            frame[offset+1] = (byte) (errorCode & BYTE);
+        }
+        System.arraycopy(buffer, 0, frame, offset + insert, buffer.length);
+
+        if (mMasking) {
+            byte[] mask = newMask();
+            System.arraycopy(mask, 0, frame, header, mask.length);
+            mask(frame, mask, offset);
+        }
+
+        return frame;
+    }
+
+    /**
+     * Binary frame of prefix followed by the remaining bytes of data, which
+     * are masked on their way into the frame rather than copied in first.
+     * data itself is left as it is.
+     */
+    public byte[] frame(byte prefix, ByteBuffer data) {
+        if (mClosed) return null;
+
+        ByteBuffer src = data.duplicate();
+        int length = 1 + src.remaining();
+        int header = (length <= 125) ? 2 : (length <= 65535 ? 4 : 10);
+        int offset = header + (mMasking ? 4 : 0);
+        byte[] frame = new byte[length + offset];
+
+        writeHeader(frame, OP_BINARY, mMasking ? MASK : 0, length);
+
+        byte[] mask = {0, 0, 0, 0};
+        if (mMasking) {
+            mask = newMask();
+            System.arraycopy(mask, 0, frame, header, mask.length);
+        }
+        frame[offset] = (byte) (prefix ^ mask[0]);
+        int n = length - 1;
+        int dst = offset + 1;
+        if (src.hasArray()) {
+            byte[] array = src.array();
+            int pos = src.arrayOffset() + src.position();
+            for (int i = 0; i < n; i++) {
+                frame[dst + i] = (byte) (array[pos + i] ^ mask[(i + 1) & 3]);
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                frame[dst + i] = (byte) (src.get() ^ mask[(i + 1) & 3]);
+            }
+        }
+        return frame;
+    }
+
+    private static void writeHeader(byte[] frame, int opcode, int masked, int length) {
         frame[0] = (byte) ((byte)FIN | (byte)opcode);
 
         if (length <= 125) {
@@ -219,23 +276,13 @@ public class HybiParser {
             frame[8] = (byte) (((int) Math.floor(length / Math.pow(2, 8)))  & BYTE);
             frame[9] = (byte) (length & BYTE);
         }
+    }
 
-        if (errorCode > 0) {
-            frame[offset] = (byte) (((int) Math.floor(errorCode / 256)) & BYTE);
-            frame[offset+1] = (byte) (errorCode & BYTE);
-        }
-        System.arraycopy(buffer, 0, frame, offset + insert, buffer.length);
-
-        if (mMasking) {
-            byte[] mask = {
-                (byte) Math.floor(Math.random() * 256), (byte) Math.floor(Math.random() * 256),
-                (byte) Math.floor(Math.random() * 256), (byte) Math.floor(Math.random() * 256)
-            };
-            System.arraycopy(mask, 0, frame, header, mask.length);
-            mask(frame, mask, offset);
-        }
-
-        return frame;
+    private static byte[] newMask() {
+        return new byte[] {
+            (byte) Math.floor(Math.random() * 256), (byte) Math.floor(Math.random() * 256),
+            (byte) Math.floor(Math.random() * 256), (byte) Math.floor(Math.random() * 256)
+        };
     }
 
     public void ping(String message) {
@@ -21,10 +21,15 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.security.KeyManagementException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class WebSocketClient {
     private static final String TAG = "WebSocketClient";
@@ -35,6 +40,8 @@ public class WebSocketClient {
     private Thread                   mThread;
     private HandlerThread            mHandlerThread;
     private Handler                  mHandler;
+    private ThreadFactory            mThreadFactory;
+    private ExecutorService          mSender;
     private List<BasicNameValuePair> mExtraHeaders;
     private HybiParser               mParser;
     private boolean                  mConnected;
@@ -48,15 +55,30 @@ public class WebSocketClient {
     }
 
     public WebSocketClient(URI uri, WsListener listener, List<BasicNameValuePair> extraHeaders) {
+        this(uri, listener, extraHeaders, null);
+    }
+
+    /**
+     * @param threadFactory makes the reading thread and a single sending one
+     * in place of a Thread and an Android HandlerThread, may be null.
+     */
+    public WebSocketClient(URI uri, WsListener listener, List<BasicNameValuePair> extraHeaders,
+            ThreadFactory threadFactory) {
         mURI          = uri;
         mListener     = listener;
         mExtraHeaders = extraHeaders;
         mConnected    = false;
         mParser       = new HybiParser(this);
-
-        mHandlerThread = new HandlerThread("websocket-thread");
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        mThreadFactory = threadFactory;
+
+        if (threadFactory != null) {
+            // a single sender keeps the frames in order.
+            mSender = Executors.newSingleThreadExecutor(threadFactory);
+        } else {
+            mHandlerThread = new HandlerThread("websocket-thread");
+            mHandlerThread.start();
+            mHandler = new Handler(mHandlerThread.getLooper());
+        }
     }
 
     public WsListener getListener() {
@@ -67,8 +89,12 @@ public class WebSocketClient {
         if (mThread != null && mThread.isAlive()) {
             return;
         }
+        if (mThreadFactory != null && mSender.isShutdown()) {
+            // the last connection took its sender along.
+            mSender = Executors.newSingleThreadExecutor(mThreadFactory);
+        }
 
-        mThread = new Thread(new Runnable() {
+        Runnable reader = new Runnable() {
             @Override
             public void run() {
                 try {
@@ -146,15 +172,21 @@ public class WebSocketClient {
 
                 } catch (Exception ex) {
                     mListener.onError(ex);
+                } finally {
+                    if (mSender != null) {
+                        // nothing left to send on, its thread ends once idle.
+                        mSender.shutdown();
+                    }
                 }
             }
-        });
+        };
+        mThread = mThreadFactory != null ? mThreadFactory.newThread(reader) : new Thread(reader);
         mThread.start();
     }
 
     public void disconnect() {
         if (mSocket != null) {
-            mHandler.post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     if (mSocket != null) {
@@ -170,6 +202,22 @@ public class WebSocketClient {
                 }
             });
         }
+        if (mSender != null) {
+            // the sender ends once done with the close.
+            mSender.shutdown();
+        }
+    }
+
+    private void post(Runnable task) {
+        if (mSender != null) {
+            try {
+                mSender.execute(task);
+            } catch (RejectedExecutionException e) {
+                Log.d(TAG, "Dropped a frame after disconnect");
+            }
+        } else {
+            mHandler.post(task);
+        }
     }
 
     public void send(String data) {
@@ -180,6 +228,10 @@ public class WebSocketClient {
         sendFrame(mParser.frame(data));
     }
 
+    public void send(byte prefix, ByteBuffer data) {
+        sendFrame(mParser.frame(prefix, data));
+    }
+
     public boolean isConnected() {
         return mConnected;
     }
@@ -237,7 +289,7 @@ public class WebSocketClient {
     }
 
     void sendFrame(final byte[] frame) {
-        mHandler.post(new Runnable() {
+        post(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -2,10 +2,9 @@ package com.github.nkzawa.emitter;
 
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 
 
@@ -16,8 +15,12 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class Emitter {
 
-    private ConcurrentMap<String, ConcurrentLinkedQueue<Listener>> callbacks
-            = new ConcurrentHashMap<String, ConcurrentLinkedQueue<Listener>>();
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
+    // listeners of each event, as arrays which are replaced, never changed,
+    // so that emit() goes over them without a copy or a lock.
+    private ConcurrentMap<String, Listener[]> callbacks
+            = new ConcurrentHashMap<String, Listener[]>();
 
     /**
      * Listens on the event.
@@ -26,16 +29,20 @@ public class Emitter {
      * @return a reference to this object.
      */
     public Emitter on(String event, Listener fn) {
-        ConcurrentLinkedQueue<Listener> callbacks = this.callbacks.get(event);
-        if (callbacks == null) {
-            callbacks = new ConcurrentLinkedQueue <Listener>();
-            ConcurrentLinkedQueue<Listener> _callbacks = this.callbacks.putIfAbsent(event, callbacks);
-            if (_callbacks != null) {
-                callbacks = _callbacks;
+        while (true) {
+            Listener[] callbacks = this.callbacks.get(event);
+            if (callbacks == null) {
+                if (this.callbacks.putIfAbsent(event, new Listener[] {fn}) == null) {
+                    return this;
+                }
+            } else {
+                Listener[] _callbacks = Arrays.copyOf(callbacks, callbacks.length + 1);
+                _callbacks[callbacks.length] = fn;
+                if (this.callbacks.replace(event, callbacks, _callbacks)) {
+                    return this;
+                }
             }
         }
-        callbacks.add(fn);
-        return this;
     }
 
     /**
@@ -79,18 +86,31 @@ public class Emitter {
      * @return a reference to this object.
      */
     public Emitter off(String event, Listener fn) {
-        ConcurrentLinkedQueue<Listener> callbacks = this.callbacks.get(event);
-        if (callbacks != null) {
-            Iterator<Listener> it = callbacks.iterator();
-            while (it.hasNext()) {
-                Listener internal = it.next();
-                if (Emitter.sameAs(fn, internal)) {
-                    it.remove();
-                    break;
-                }
+        while (true) {
+            Listener[] callbacks = this.callbacks.get(event);
+            if (callbacks == null) {
+                return this;
+            }
+            int i = 0;
+            while (i < callbacks.length && !Emitter.sameAs(fn, callbacks[i])) {
+                i++;
+            }
+            if (i == callbacks.length) {
+                return this;
+            }
+            boolean done;
+            if (callbacks.length == 1) {
+                done = this.callbacks.remove(event, callbacks);
+            } else {
+                Listener[] _callbacks = new Listener[callbacks.length - 1];
+                System.arraycopy(callbacks, 0, _callbacks, 0, i);
+                System.arraycopy(callbacks, i + 1, _callbacks, i, callbacks.length - i - 1);
+                done = this.callbacks.replace(event, callbacks, _callbacks);
+            }
+            if (done) {
+                return this;
             }
         }
-        return this;
     }
 
     private static boolean sameAs(Listener fn, Listener internal) {
@@ -104,14 +124,15 @@ public class Emitter {
     }
 
     /**
-     * Executes each of listeners with the given args.
+     * Executes each of listeners with the given args. Like the JavaScript
+     * module, it calls the listeners there were when it started.
      *
      * @param event an event name.
      * @param args
      * @return a reference to this object.
      */
     public Emitter emit(String event, Object... args) {
-        ConcurrentLinkedQueue<Listener> callbacks = this.callbacks.get(event);
+        Listener[] callbacks = this.callbacks.get(event);
         if (callbacks != null) {
             for (Listener fn : callbacks) {
                 fn.call(args);
@@ -127,9 +148,19 @@ public class Emitter {
      * @return a reference to this object.
      */
     public List<Listener> listeners(String event) {
-        ConcurrentLinkedQueue<Listener> callbacks = this.callbacks.get(event);
-        return callbacks != null ?
-                new ArrayList<Listener>(callbacks) : new ArrayList<Listener>(0);
+        Listener[] callbacks = this.callbacks.get(event);
+        return new ArrayList<Listener>(Arrays.asList(callbacks != null ? callbacks : NO_LISTENERS));
+    }
+
+    /**
+     * Returns the number of listeners for the specified event.
+     *
+     * @param event an event name.
+     * @return the number of listeners.
+     */
+    public int listenerCount(String event) {
+        Listener[] callbacks = this.callbacks.get(event);
+        return callbacks != null ? callbacks.length : 0;
     }
 
     /**
@@ -139,8 +170,7 @@ public class Emitter {
      * @return a reference to this object.
      */
     public boolean hasListeners(String event) {
-        ConcurrentLinkedQueue<Listener> callbacks = this.callbacks.get(event);
-        return callbacks != null && !callbacks.isEmpty();
+        return this.callbacks.containsKey(event);
     }
 
     public static interface Listener {
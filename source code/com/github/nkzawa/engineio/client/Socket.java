@@ -17,6 +17,7 @@ import java.util.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
@@ -121,9 +122,11 @@ public class Socket extends Emitter {
     private Future pingTimeoutTimer;
     private Future pingIntervalTimer;
     private SSLContext sslContext;
+    private ThreadFactory threadFactory;
 
     private ReadyState readyState;
     private ScheduledExecutorService heartbeatScheduler;
+    /*package*/ final EventThread.Loop loop;
 
     public static void setDefaultSSLContext(SSLContext sslContext) {
         defaultSSLContext = sslContext;
@@ -185,6 +188,7 @@ public class Socket extends Emitter {
 
         this.secure = opts.secure;
         this.sslContext = opts.sslContext != null ? opts.sslContext : defaultSSLContext;
+        this.threadFactory = opts.threadFactory;
         this.hostname = opts.hostname != null ? opts.hostname : "localhost";
         this.port = opts.port != 0 ? opts.port : (this.secure ? 443 : 80);
         this.query = opts.query != null ?
@@ -197,6 +201,7 @@ public class Socket extends Emitter {
                 opts.transports : new String[]{Polling.NAME, WebSocket.NAME}));
         this.policyPort = opts.policyPort != 0 ? opts.policyPort : 843;
         this.rememberUpgrade = opts.rememberUpgrade;
+        this.loop = opts.loop != null ? opts.loop : EventThread.assign();
     }
 
     /**
@@ -205,7 +210,7 @@ public class Socket extends Emitter {
      * @return a reference to to this object.
      */
     public Socket open() {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 String transportName;
@@ -214,7 +219,7 @@ public class Socket extends Emitter {
                 } else if (0 == Socket.this.transports.size()) {
                     // Emit error on next tick so it can be listened to
                     final Socket self = Socket.this;
-                    EventThread.nextTick(new Runnable() {
+                    loop.nextTick(new Runnable() {
                         @Override
                         public void run() {
                             self.emit(Socket.EVENT_ERROR, new EngineIOException("No transports available"));
@@ -245,6 +250,7 @@ public class Socket extends Emitter {
 
         Transport.Options opts = new Transport.Options();
         opts.sslContext = this.sslContext;
+        opts.threadFactory = this.threadFactory;
         opts.hostname = this.hostname;
         opts.port = this.port;
         opts.secure = this.secure;
@@ -526,7 +532,7 @@ public class Socket extends Emitter {
         this.pingTimeoutTimer = this.getHeartbeatScheduler().schedule(new Runnable() {
             @Override
             public void run() {
-                EventThread.exec(new Runnable() {
+                loop.exec(new Runnable() {
                     @Override
                     public void run() {
                         if (self.readyState == ReadyState.CLOSED) return;
@@ -546,7 +552,7 @@ public class Socket extends Emitter {
         this.pingIntervalTimer = this.getHeartbeatScheduler().schedule(new Runnable() {
             @Override
             public void run() {
-                EventThread.exec(new Runnable() {
+                loop.exec(new Runnable() {
                     @Override
                     public void run() {
                         logger.fine(String.format("writing ping packet - expecting pong within %sms", self.pingTimeout));
@@ -562,7 +568,7 @@ public class Socket extends Emitter {
      * Sends a ping packet.
      */
     public void ping() {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 Socket.this.sendPacket(Packet.PING);
@@ -637,7 +643,7 @@ public class Socket extends Emitter {
      * @param fn callback to be called on drain
      */
     public void send(final String msg, final Runnable fn) {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 Socket.this.sendPacket(Packet.MESSAGE, msg, fn);
@@ -646,7 +652,7 @@ public class Socket extends Emitter {
     }
 
     public void send(final byte[] msg, final Runnable fn) {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 Socket.this.sendPacket(Packet.MESSAGE, msg, fn);
@@ -690,7 +696,7 @@ public class Socket extends Emitter {
      * @return a reference to to this object.
      */
     public Socket close() {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 if (Socket.this.readyState == ReadyState.OPENING || Socket.this.readyState == ReadyState.OPEN) {
@@ -775,7 +781,7 @@ public class Socket extends Emitter {
                 this.heartbeatScheduler.shutdown();
             }
 
-            EventThread.nextTick(new Runnable() {
+            loop.nextTick(new Runnable() {
                 @Override
                 public void run() {
                     self.writeBuffer.clear();
@@ -843,6 +849,12 @@ public class Socket extends Emitter {
         public String host;
         public String query;
 
+        /**
+         * Event loop the socket and its transports run on, one of
+         * EventThread's in turn when null.
+         */
+        public EventThread.Loop loop;
+
 
         private static Options fromURI(URI uri, Options opts) {
             if (opts == null) {
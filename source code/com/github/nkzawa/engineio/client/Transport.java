@@ -7,6 +7,7 @@ import com.github.nkzawa.thread.EventThread;
 
 import javax.net.ssl.SSLContext;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 
 public abstract class Transport extends Emitter {
 
@@ -43,6 +44,9 @@ public abstract class Transport extends Emitter {
     protected Socket socket;
 
     protected ReadyState readyState;
+    // the loop of the socket, which tasks from other threads go back to.
+    protected EventThread.Loop loop;
+    protected ThreadFactory threadFactory;
 
     public Transport(Options opts) {
         this.path = opts.path;
@@ -54,6 +58,8 @@ public abstract class Transport extends Emitter {
         this.timestampRequests = opts.timestampRequests;
         this.sslContext = opts.sslContext;
         this.socket = opts.socket;
+        this.threadFactory = opts.threadFactory;
+        this.loop = opts.socket != null ? opts.socket.loop : EventThread.assign();
     }
 
     protected Transport onError(String msg, Exception desc) {
@@ -64,7 +70,7 @@ public abstract class Transport extends Emitter {
     }
 
     public Transport open() {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 if (Transport.this.readyState == ReadyState.CLOSED || Transport.this.readyState == null) {
@@ -77,7 +83,7 @@ public abstract class Transport extends Emitter {
     }
 
     public Transport close() {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 if (Transport.this.readyState == ReadyState.OPENING || Transport.this.readyState == ReadyState.OPEN) {
@@ -90,7 +96,7 @@ public abstract class Transport extends Emitter {
     }
 
     public void send(final Packet[] packets) {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 if (Transport.this.readyState == ReadyState.OPEN) {
@@ -144,5 +150,12 @@ public abstract class Transport extends Emitter {
         public Map<String, String> query;
         public SSLContext sslContext;
         protected Socket socket;
+
+        /**
+         * Makes the threads blocking on HTTP requests and WebSocket reads,
+         * e.g. virtual ones from VirtualThreads.factory(). Plain threads
+         * when null.
+         */
+        public ThreadFactory threadFactory;
     }
 }
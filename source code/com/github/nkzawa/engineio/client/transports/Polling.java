@@ -5,7 +5,6 @@ import com.github.nkzawa.engineio.client.Transport;
 import com.github.nkzawa.engineio.parser.Packet;
 import com.github.nkzawa.engineio.parser.Parser;
 import com.github.nkzawa.parseqs.ParseQS;
-import com.github.nkzawa.thread.EventThread;
 
 import java.util.Date;
 import java.util.HashMap;
@@ -34,7 +33,7 @@ abstract public class Polling extends Transport {
     }
 
     public void pause(final Runnable onPause) {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 final Polling self = Polling.this;
@@ -1,7 +1,6 @@
 package com.github.nkzawa.engineio.client.transports;
 
 import com.github.nkzawa.emitter.Emitter;
-import com.github.nkzawa.thread.EventThread;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -13,6 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 public class PollingXHR extends Polling {
@@ -36,6 +36,7 @@ public class PollingXHR extends Polling {
         }
         opts.uri = this.uri();
         opts.sslContext = this.sslContext;
+        opts.threadFactory = this.threadFactory;
 
         Request req = new Request(opts);
 
@@ -49,7 +50,7 @@ public class PollingXHR extends Polling {
         }).on(Request.EVENT_RESPONSE_HEADERS, new Listener() {
             @Override
             public void call(final Object... args) {
-                EventThread.exec(new Runnable() {
+                loop.exec(new Runnable() {
                     @Override
                     public void run() {
                         self.emit(EVENT_RESPONSE_HEADERS, args[0]);
@@ -70,7 +71,7 @@ public class PollingXHR extends Polling {
         req.on(Request.EVENT_SUCCESS, new Listener() {
             @Override
             public void call(Object... args) {
-                EventThread.exec(new Runnable() {
+                loop.exec(new Runnable() {
                     @Override
                     public void run() {
                         fn.run();
@@ -81,7 +82,7 @@ public class PollingXHR extends Polling {
         req.on(Request.EVENT_ERROR, new Listener() {
             @Override
             public void call(final Object... args) {
-                EventThread.exec(new Runnable() {
+                loop.exec(new Runnable() {
                     @Override
                     public void run() {
                         Exception err = args.length > 0 && args[0] instanceof Exception ? (Exception)args[0] : null;
@@ -102,7 +103,7 @@ public class PollingXHR extends Polling {
         req.on(Request.EVENT_DATA, new Listener() {
             @Override
             public void call(final Object... args) {
-                EventThread.exec(new Runnable() {
+                loop.exec(new Runnable() {
                     @Override
                     public void run() {
                         Object arg = args.length > 0 ? args[0] : null;
@@ -118,7 +119,7 @@ public class PollingXHR extends Polling {
         req.on(Request.EVENT_ERROR, new Listener() {
             @Override
             public void call(final Object... args) {
-                EventThread.exec(new Runnable() {
+                loop.exec(new Runnable() {
                     @Override
                     public void run() {
                         Exception err = args.length > 0 && args[0] instanceof Exception ? (Exception) args[0] : null;
@@ -146,6 +147,7 @@ public class PollingXHR extends Polling {
         private byte[] data;
 
         private SSLContext sslContext;
+        private ThreadFactory threadFactory;
         private HttpURLConnection xhr;
 
         public Request(Options opts) {
@@ -153,6 +155,7 @@ public class PollingXHR extends Polling {
             this.uri = opts.uri;
             this.data = opts.data;
             this.sslContext = opts.sslContext;
+            this.threadFactory = opts.threadFactory;
         }
 
         public void create() {
@@ -187,7 +190,7 @@ public class PollingXHR extends Polling {
             }
 
             logger.fine(String.format("sending xhr with url %s | data %s", this.uri, this.data));
-            new Thread(new Runnable() {
+            Runnable task = new Runnable() {
                 @Override
                 public void run() {
                     OutputStream output = null;
@@ -225,7 +228,10 @@ public class PollingXHR extends Polling {
                         } catch (IOException e) {}
                     }
                 }
-            }).start();
+            };
+            Thread thread = this.threadFactory != null ?
+                    this.threadFactory.newThread(task) : new Thread(task);
+            thread.start();
         }
 
         private void onSuccess() {
@@ -317,6 +323,7 @@ public class PollingXHR extends Polling {
             public String method;
             public byte[] data;
             public SSLContext sslContext;
+            public ThreadFactory threadFactory;
         }
     }
 }
@@ -2,6 +2,7 @@ package com.github.nkzawa.engineio.client.transports;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
 import java.util.Date;
 import java.util.HashMap;
@@ -14,7 +15,6 @@ import com.github.nkzawa.engineio.client.Transport;
 import com.github.nkzawa.engineio.parser.Packet;
 import com.github.nkzawa.engineio.parser.Parser;
 import com.github.nkzawa.parseqs.ParseQS;
-import com.github.nkzawa.thread.EventThread;
 
 public class WebSocket extends Transport {
 
@@ -36,7 +36,7 @@ public class WebSocket extends Transport {
 
         try {
         	String url = uri();
-        	ws = new WebSocketClient(new URI(url), listener, null);
+        	ws = new WebSocketClient(new URI(url), listener, null, threadFactory);
         	ws.connect();
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
@@ -49,7 +49,7 @@ public class WebSocket extends Transport {
 		public void onMessage(byte[] data) {
 //			Log.d("jerome", "WebSocketClient, onMessage ByteBuffer len:" + data.length);
 			final byte[] fData = data;
-            EventThread.exec(new Runnable() {
+            loop.exec(new Runnable() {
                 @Override
                 public void run() {
                     onData(fData);
@@ -61,7 +61,7 @@ public class WebSocket extends Transport {
 		public void onMessage(String message) {
 //			Log.d("jerome", "WebSocketClient, onMessage String:" + message);
 			final String msg = message;
-            EventThread.exec(new Runnable() {
+            loop.exec(new Runnable() {
                 @Override
                 public void run() {
                     onData(msg);
@@ -72,7 +72,7 @@ public class WebSocket extends Transport {
 		@Override
 		public void onError(Exception error) {
 			final Exception e = error;
-			EventThread.exec(new Runnable() {
+			loop.exec(new Runnable() {
                 @Override
                 public void run() {
                     WebSocket.this.onError("websocket error", e);
@@ -82,7 +82,7 @@ public class WebSocket extends Transport {
 		
 		@Override
 		public void onDisconnect(int code, String reason) {
-			EventThread.exec(new Runnable() {
+			loop.exec(new Runnable() {
                 @Override
                 public void run() {
                     onClose();
@@ -92,7 +92,7 @@ public class WebSocket extends Transport {
 		
 		@Override
 		public void onConnect() {
-			EventThread.exec(new Runnable() {
+			loop.exec(new Runnable() {
                 @Override
                 public void run() {
                     Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
@@ -122,6 +122,15 @@ public class WebSocket extends Transport {
         final WebSocket self = this;
         this.writable = false;
         for (Packet packet : packets) {
+            if (packet.data instanceof byte[]) {
+                // the type byte and the data are masked straight into the frame.
+                try {
+                    self.ws.send(Parser.binaryType(packet.type), ByteBuffer.wrap((byte[]) packet.data));
+                } catch (NotYetConnectedException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
             Parser.encodePacket(packet, new Parser.EncodeCallback() {
                 @Override
                 public void call(Object packet) {
@@ -149,7 +158,7 @@ public class WebSocket extends Transport {
 
         // fake drain
         // defer to next tick to allow Socket to clear writeBuffer
-        EventThread.nextTick(ondrain);
+        loop.nextTick(ondrain);
     }
 	
 	protected String uri() {
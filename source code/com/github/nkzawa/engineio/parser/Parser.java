@@ -63,6 +63,13 @@ public class Parser {
         _callback.call(encoded);
     }
 
+    /**
+     * @return the byte a binary packet of this type starts with.
+     */
+    public static byte binaryType(String type) {
+        return packets.get(type).byteValue();
+    }
+
     private static void encodeByteArray(Packet<byte[]> packet, EncodeCallback<byte[]> callback) {
         byte[] data = packet.data;
         byte[] resultArray = new byte[1 + data.length];
@@ -91,6 +91,7 @@ public class Manager extends Emitter {
     /*package*/ com.github.nkzawa.engineio.client.Socket engine;
     private Parser.Encoder encoder;
     private Parser.Decoder decoder;
+    /*package*/ EventThread.Loop loop;
 
     /**
      * This HashMap can be accessed from outside of EventThread.
@@ -120,7 +121,12 @@ public class Manager extends Emitter {
         if (opts.sslContext == null) {
             opts.sslContext = defaultSSLContext;
         }
+        if (opts.loop == null) {
+            // the engine and every namespace stay on the same loop.
+            opts.loop = EventThread.assign();
+        }
         this.opts = opts;
+        this.loop = opts.loop;
         this.nsps = new ConcurrentHashMap<String, Socket>();
         this.subs = new LinkedList<On.Handle>();
         this.reconnection(opts.reconnection);
@@ -158,6 +164,13 @@ public class Manager extends Emitter {
         }
     }
 
+    /**
+     * @return the event loop this manager, its engine and sockets run on.
+     */
+    public EventThread.Loop loop() {
+        return this.loop;
+    }
+
     public boolean reconnection() {
         return this._reconnection;
     }
@@ -239,7 +252,7 @@ public class Manager extends Emitter {
      * @return a reference to this object.
      */
     public Manager open(final OpenCallback fn) {
-        EventThread.exec(new Runnable() {
+        loop.exec(new Runnable() {
             @Override
             public void run() {
                 logger.fine(String.format("readyState %s", Manager.this.readyState));
@@ -295,7 +308,7 @@ public class Manager extends Emitter {
                     timer.schedule(new TimerTask() {
                         @Override
                         public void run() {
-                            EventThread.exec(new Runnable() {
+                            loop.exec(new Runnable() {
                                 @Override
                                 public void run() {
                                     logger.fine(String.format("connect attempt timed out after %d", timeout));
@@ -498,7 +511,7 @@ public class Manager extends Emitter {
                 @Override
                 public void run() {
                 	timer.cancel();
-                    EventThread.exec(new Runnable() {
+                    loop.exec(new Runnable() {
                         @Override
                         public void run() {
                             if (self.skipReconnect) return;
@@ -4,7 +4,6 @@ import com.github.nkzawa.emitter.Emitter;
 import com.github.nkzawa.hasbinary.HasBinary;
 import com.github.nkzawa.socketio.parser.Packet;
 import com.github.nkzawa.socketio.parser.Parser;
-import com.github.nkzawa.thread.EventThread;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -114,7 +113,7 @@ public class Socket extends Emitter {
      * Connects the socket.
      */
     public Socket open() {
-        EventThread.exec(new Runnable() {
+        io.loop.exec(new Runnable() {
             @Override
             public void run() {
                 if (Socket.this.connected) return;
@@ -141,7 +140,7 @@ public class Socket extends Emitter {
      * @return a reference to this object.
      */
     public Socket send(final Object... args) {
-        EventThread.exec(new Runnable() {
+        io.loop.exec(new Runnable() {
             @Override
             public void run() {
                 Socket.this.emit(EVENT_MESSAGE, args);
@@ -159,7 +158,7 @@ public class Socket extends Emitter {
      */
     @Override
     public Emitter emit(final String event, final Object... args) {
-        EventThread.exec(new Runnable() {
+        io.loop.exec(new Runnable() {
             @Override
             public void run() {
                 if (events.containsKey(event)) {
@@ -221,7 +220,7 @@ public class Socket extends Emitter {
      * @return a reference to this object.
      */
     public Emitter emit(final String event, final Object[] args, final Ack ack) {
-        EventThread.exec(new Runnable() {
+        io.loop.exec(new Runnable() {
             @Override
             public void run() {
                 List<Object> _args = new ArrayList<Object>() {{
@@ -325,7 +324,7 @@ public class Socket extends Emitter {
         return new Ack() {
             @Override
             public void call(final Object... args) {
-                EventThread.exec(new Runnable() {
+                io.loop.exec(new Runnable() {
                     @Override
                     public void run() {
                         if (sent[0]) return;
@@ -393,7 +392,7 @@ public class Socket extends Emitter {
      * @return a reference to this object.
      */
     public Socket close() {
-        EventThread.exec(new Runnable() {
+        io.loop.exec(new Runnable() {
             @Override
             public void run() {
                 if (Socket.this.connected) {
@@ -1,36 +1,89 @@
 package com.github.nkzawa.thread;
 
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import android.util.Log;
 
 
 /**
  * The thread for event loop. All non-background tasks run within this thread.
+ * <p>
+ * There may be several loops, see {@link #setLoops(int)}. Each connection is
+ * pinned to one of them, so all of its tasks still run one after the other,
+ * while different connections make use of several cores.
+ * <p>
+ * A loop's thread stays around for a while once idle, see
+ * {@link #setIdleTimeout(long)}, instead of being torn down after every burst.
  */
 public class EventThread extends Thread {
 
-    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable runnable) {
-            thread = new EventThread(runnable);
-            thread.setName("EventThread");
-            return thread;
-        }
-    };
+    private static volatile Loop[] loops = new Loop[] {new Loop(0)};
+
+    private static final AtomicInteger nextLoop = new AtomicInteger();
 
-    private static EventThread thread;
+    private static volatile long idleTimeout = 1000;
 
-    private static ExecutorService service;
+    // tasks run per wakeup before the counters are brought up to date.
+    private static final int BATCH = 64;
 
-    private static int counter = 0;
+    private final Loop loop;
 
 
-    private EventThread(Runnable runnable) {
+    private EventThread(Loop loop, Runnable runnable) {
         super(runnable);
+        this.loop = loop;
+    }
+
+    /**
+     * Sets how many loops connections are spread over, 1 by default.
+     * Call it before the first connection is made.
+     *
+     * @param n
+     */
+    public static synchronized void setLoops(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("at least one loop is needed");
+        }
+        Loop[] ret = new Loop[n];
+        for (int i = 0; i < n; i++) {
+            ret[i] = i < loops.length ? loops[i] : new Loop(i);
+        }
+        loops = ret;
+    }
+
+    public static int getLoops() {
+        return loops.length;
+    }
+
+    /**
+     * @return the loop the current thread runs, or the first one when called
+     * from any other thread.
+     */
+    public static Loop loop() {
+        Thread current = currentThread();
+        if (current instanceof EventThread) {
+            return ((EventThread) current).loop;
+        }
+        return loops[0];
+    }
+
+    /**
+     * @return the loop for a new connection: the current one when called from
+     * a loop, so that whatever a connection creates stays with it, otherwise
+     * the loops in turn.
+     */
+    public static Loop assign() {
+        Thread current = currentThread();
+        if (current instanceof EventThread) {
+            return ((EventThread) current).loop;
+        }
+        Loop[] all = loops;
+        return all[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % all.length];
     }
 
     /**
@@ -39,7 +92,7 @@ public class EventThread extends Thread {
      * @return true if the current thread is EventThread.
      */
     public static boolean isCurrent() {
-        return currentThread() == thread;
+        return currentThread() instanceof EventThread;
     }
 
     /**
@@ -48,12 +101,7 @@ public class EventThread extends Thread {
      * @param task
      */
     public static void exec(Runnable task) {
-//    	Log.d("jerome", "exec, counter: " + counter + ", current thread:" + currentThread().getName());
-        if (isCurrent()) {
-            task.run();
-        } else {
-            nextTick(task);
-        }
+        loop().exec(task);
     }
 
     /**
@@ -61,33 +109,191 @@ public class EventThread extends Thread {
      *
      * @param task
      */
-    public static void nextTick(final Runnable task) {
-        ExecutorService executor;
-        synchronized (EventThread.class) {
-          counter++;
-          if (service == null) {
-              service = Executors.newSingleThreadExecutor(THREAD_FACTORY);
-          }
-          executor = service;
-        }
-
-        executor.execute(new Runnable() {
-            @Override
-            public void run() {
+    public static void nextTick(Runnable task) {
+        loop().nextTick(task);
+    }
+
+    /**
+     * Sets how long an idle loop waits for more tasks before its thread
+     * exits, 1000 ms by default. 0 stops it as soon as it runs out of tasks,
+     * a negative value keeps it forever. The next task starts it again.
+     *
+     * @param ms
+     */
+    public static void setIdleTimeout(long ms) {
+        idleTimeout = ms;
+    }
+
+    public static long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @return tasks run by all loops so far.
+     */
+    public static long getTasksExecuted() {
+        long ret = 0;
+        for (Loop loop : loops) {
+            ret += loop.getTasksExecuted();
+        }
+        return ret;
+    }
+
+    /**
+     * One event loop, started on its first task.
+     */
+    public static class Loop {
+
+        private final int index;
+
+        private final MpscQueue<Runnable> queue = new MpscQueue<Runnable>();
+
+        private final AtomicLong submitted = new AtomicLong();
+
+        // whether a thread is looping, or about to.
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        // set by the loop's thread before it parks, producers only wake it then.
+        private volatile boolean parked = false;
+
+        private volatile EventThread thread;
+
+        // only ever written by the loop's thread, once per batch.
+        private volatile long executed = 0;
+
+        private Loop(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return tasks run by this loop so far.
+         */
+        public long getTasksExecuted() {
+            return executed;
+        }
+
+        /**
+         * @return tasks waiting to be run.
+         */
+        public int getQueueDepth() {
+            return (int) Math.max(0, submitted.get() - executed);
+        }
+
+        /**
+         * @return true if the current thread is the thread of this loop.
+         */
+        public boolean isCurrent() {
+            return currentThread() == thread;
+        }
+
+        /**
+         * Executes a task in this loop.
+         *
+         * @param task
+         */
+        public void exec(Runnable task) {
+            if (isCurrent()) {
+                task.run();
+            } else {
+                nextTick(task);
+            }
+        }
+
+        /**
+         * Executes a task on the next turn of this loop.
+         *
+         * @param task
+         */
+        public void nextTick(Runnable task) {
+            queue.offer(task);
+            submitted.incrementAndGet();
+            if (!running.get() && running.compareAndSet(false, true)) {
+                start();
+            } else if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void start() {
+            EventThread t = new EventThread(this, new Runnable() {
+                @Override
+                public void run() {
+                    runLoop();
+                }
+            });
+            t.setName(index == 0 ? "EventThread" : "EventThread-" + index);
+            thread = t;
+            t.start();
+        }
+
+        private void runLoop() {
+            EventThread self = (EventThread) currentThread();
+            while (true) {
+                if (drain(self) > 0) {
+                    continue;
+                }
+                if (!queue.isEmpty()) {
+                    // offered but not linked in yet, which takes a moment.
+                    Thread.yield();
+                    continue;
+                }
+                if (!await()) {
+                    // done, unless a task came in while we were stopping.
+                    running.set(false);
+                    if (queue.isEmpty() || !running.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        // Runs up to BATCH tasks, counting them once.
+        private int drain(EventThread self) {
+            int n = 0;
+            Runnable task;
+            while (n < BATCH && (task = queue.poll()) != null) {
+                n++;
                 try {
-//                	Log.d("jerome", "nextTick run, counter: " + counter + ", current thread:" + currentThread().getName());
+//                	Log.d("jerome", "loop run, current thread:" + self.getName());
                     task.run();
-                } finally {
-                    synchronized (EventThread.class) {
-                        counter--;
-                        if (counter == 0) {
-                            service.shutdown();
-                            service = null;
-                            thread = null;
-                        }
+                } catch (Throwable e) {
+                    self.getUncaughtExceptionHandler().uncaughtException(self, e);
+                }
+            }
+            if (n > 0) {
+                executed += n;
+            }
+            return n;
+        }
+
+        // Waits for a task until the idle timeout is over, false if none came.
+        private boolean await() {
+            long timeout = idleTimeout;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (queue.isEmpty()) {
+                parked = true;
+                // a producer which missed the flag has its task in by now.
+                if (!queue.isEmpty()) {
+                    parked = false;
+                    break;
+                }
+                if (timeout < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        parked = false;
+                        return false;
                     }
+                    LockSupport.parkNanos(this, left);
                 }
+                parked = false;
             }
-        });
+            return true;
+        }
     }
 }
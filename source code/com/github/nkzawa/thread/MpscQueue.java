@@ -0,0 +1,70 @@
+package com.github.nkzawa.thread;
+
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+
+/**
+ * Unbounded lock-free queue for many producers and a single consumer
+ * (Vyukov's). offer() is one atomic swap and a store, poll() takes no
+ * atomics at all. Only the consumer thread may call poll() and isEmpty().
+ */
+final class MpscQueue<E> {
+
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+    // last node offered, swapped by producers.
+    private final AtomicReference<Node<E>> tail;
+
+    // the node before the first element, only touched by the consumer.
+    private Node<E> head;
+
+    MpscQueue() {
+        Node<E> stub = new Node<E>(null);
+        head = stub;
+        tail = new AtomicReference<Node<E>>(stub);
+    }
+
+    @SuppressWarnings("unchecked")
+    void offer(E value) {
+        Node<E> node = new Node<E>(value);
+        Node<E> prev = tail.getAndSet(node);
+        // the swap above already published node, no need for a full fence.
+        NEXT.lazySet(prev, node);
+    }
+
+    /**
+     * @return the first element, or null when there is none or when its
+     * producer is still linking it in.
+     */
+    E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E ret = next.value;
+        next.value = null;
+        head = next;
+        return ret;
+    }
+
+    /**
+     * @return true when nothing was offered that hasn't been polled, counting
+     * offers which are still being linked in.
+     */
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.nkzawa.thread;
+
+
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Virtual threads for the blocking transports, on JVMs which have them
+ * (Java 21 and later). Looked up reflectively, so the client still builds
+ * and runs on older JVMs and on Android.
+ */
+public class VirtualThreads {
+
+    private static ThreadFactory factory;
+
+    private static boolean resolved = false;
+
+    private VirtualThreads() {}
+
+    /**
+     * @return a factory of virtual threads to set as Socket.Options.threadFactory,
+     * or null when this JVM has none.
+     */
+    public static synchronized ThreadFactory factory() {
+        if (!resolved) {
+            resolved = true;
+            try {
+                // through the public Thread.Builder, its implementations aren't.
+                Class<?> type = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = type.getMethod("name", String.class, long.class)
+                        .invoke(builder, "engine.io-", 0L);
+                factory = (ThreadFactory) type.getMethod("factory").invoke(builder);
+            } catch (Exception e) {
+                factory = null;
+            }
+        }
+        return factory;
+    }
+
+    public static boolean isAvailable() {
+        return factory() != null;
+    }
+}
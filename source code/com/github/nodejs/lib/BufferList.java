@@ -0,0 +1,193 @@
+package com.github.nodejs.lib;
+
+import com.github.nodejs.vo.Buffer;
+import com.github.nodejs.vo.BufferPool;
+import com.github.nodejs.vo.ReadableChunk;
+
+/**
+ * Chunk queue backing Readable, ported from node's internal BufferList.
+ * Chunks are kept in a ring so shifting the head is O(1), and a partial read
+ * only advances an offset into the head chunk instead of re-slicing it.
+ * <p>
+ * The list owns one reference on each pooled chunk it holds. Whatever it
+ * returns is handed over with one reference owned by the caller.
+ */
+public class BufferList {
+
+	private ReadableChunk[] ring = new ReadableChunk[16];
+	private int head = 0;
+	private int count = 0;
+	// how much of the head chunk was already consumed.
+	private int headOffset = 0;
+
+	public int size() {
+		return count;
+	}
+
+	//Length of what is left of the first chunk.
+	public int headLength() {
+		if (count == 0) {
+			return 0;
+		}
+		return ring[head].length() - headOffset;
+	}
+
+	public void push(ReadableChunk chunk) {
+		if (count == ring.length) {
+			grow();
+		}
+		ring[(head + count) & (ring.length - 1)] = chunk;
+		count++;
+	}
+
+	public void unshift(ReadableChunk chunk) {
+		if (count == ring.length) {
+			grow();
+		}
+		// the offset only ever applies to the head, so settle it first.
+		if (headOffset > 0) {
+			ring[head] = ring[head].slice(headOffset);
+			headOffset = 0;
+		}
+		head = (head - 1) & (ring.length - 1);
+		ring[head] = chunk;
+		count++;
+	}
+
+	public ReadableChunk shift() {
+		if (count == 0) {
+			return null;
+		}
+		ReadableChunk ret = ring[head];
+		if (headOffset > 0) {
+			ret = ret.slice(headOffset);
+		}
+		dropHead(false);
+		return ret;
+	}
+
+	public void clear() {
+		for (int i = 0; i < count; i++) {
+			int index = (head + i) & (ring.length - 1);
+			ring[index].release();
+			ring[index] = null;
+		}
+		head = 0;
+		count = 0;
+		headOffset = 0;
+	}
+
+	//Concatenates everything that is left into one chunk and empties the list.
+	public ReadableChunk concat() {
+		if (count == 0) {
+			return null;
+		}
+		ReadableChunk first = ring[head];
+		if (count == 1) {
+			return shift();
+		}
+		if (first.bytes == null) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < count; i++) {
+				ReadableChunk chunk = ring[(head + i) & (ring.length - 1)];
+				if (chunk.chars != null) {
+					sb.append(chunk.chars, i == 0 ? headOffset : 0, chunk.chars.length());
+				}
+			}
+			clear();
+			return new ReadableChunk(sb.toString());
+		}
+		int len = 0;
+		for (int i = 0; i < count; i++) {
+			len += ring[(head + i) & (ring.length - 1)].length();
+		}
+		Buffer ret = BufferPool.acquire(len - headOffset);
+		int pos = 0;
+		for (int i = 0; i < count; i++) {
+			ReadableChunk chunk = ring[(head + i) & (ring.length - 1)];
+			if (chunk.bytes != null) {
+				int start = i == 0 ? headOffset : 0;
+				chunk.bytes.copy(ret, pos, start, chunk.length());
+				pos += chunk.length() - start;
+			}
+		}
+		clear();
+		return new ReadableChunk(ret);
+	}
+
+	//Consumes a specified amount of bytes or characters from the buffered data.
+	public ReadableChunk consume(int n, boolean hasStrings) {
+		int headLen = headLength();
+		if (n < headLen) {
+			// just take a part of the first chunk and move the offset past it.
+			ReadableChunk ret = ring[head].slice(headOffset, headOffset + n);
+			headOffset += n;
+			return ret.retain();
+		}
+		if (n == headLen) {
+			// first chunk is a perfect match.
+			return shift();
+		}
+		// result spans more than one chunk.
+		return hasStrings ? copyFromString(n) : copyFromBuffer(n);
+	}
+
+	private ReadableChunk copyFromString(int n) {
+		StringBuilder sb = new StringBuilder(n);
+		int c = 0;
+		while (c < n && count > 0) {
+			ReadableChunk chunk = ring[head];
+			int available = chunk.length() - headOffset;
+			int cpy = Math.min(n - c, available);
+			if (chunk.chars != null) {
+				sb.append(chunk.chars, headOffset, headOffset + cpy);
+			}
+			advance(cpy, available);
+			c += cpy;
+		}
+		return new ReadableChunk(sb.toString());
+	}
+
+	private ReadableChunk copyFromBuffer(int n) {
+		Buffer ret = BufferPool.acquire(n);
+		int c = 0;
+		while (c < n && count > 0) {
+			ReadableChunk chunk = ring[head];
+			int available = chunk.length() - headOffset;
+			int cpy = Math.min(n - c, available);
+			if (chunk.bytes != null) {
+				chunk.bytes.copy(ret, c, headOffset, headOffset + cpy);
+			}
+			advance(cpy, available);
+			c += cpy;
+		}
+		return new ReadableChunk(ret);
+	}
+
+	private void advance(int consumed, int available) {
+		if (consumed < available) {
+			headOffset += consumed;
+		} else {
+			dropHead(true);
+		}
+	}
+
+	private void dropHead(boolean release) {
+		if (release) {
+			ring[head].release();
+		}
+		ring[head] = null;
+		head = (head + 1) & (ring.length - 1);
+		headOffset = 0;
+		count--;
+	}
+
+	private void grow() {
+		ReadableChunk[] bigger = new ReadableChunk[ring.length << 1];
+		for (int i = 0; i < count; i++) {
+			bigger[i] = ring[(head + i) & (ring.length - 1)];
+		}
+		ring = bigger;
+		head = 0;
+	}
+}
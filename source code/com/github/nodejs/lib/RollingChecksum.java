@@ -0,0 +1,54 @@
+package com.github.nodejs.lib;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * rsync's weak checksum over a window of bytes, which slides along by one
+ * byte in constant time. Matches are confirmed with {@link #strong}.
+ */
+public class RollingChecksum {
+
+	private int a = 0;
+	private int b = 0;
+	private int size = 0;
+
+	public void reset(byte[] data, int off, int len) {
+		a = 0;
+		b = 0;
+		size = len;
+		for (int i = 0; i < len; i++) {
+			int x = data[off + i] & 0xff;
+			a += x;
+			b += (len - i) * x;
+		}
+	}
+
+	//Slides the window by one byte, dropping out and taking in.
+	public void roll(byte out, byte in) {
+		int x = out & 0xff;
+		a += (in & 0xff) - x;
+		b += a - size * x;
+	}
+
+	public int value() {
+		return (a & 0xffff) | (b << 16);
+	}
+
+	public static int of(byte[] data, int off, int len) {
+		RollingChecksum sum = new RollingChecksum();
+		sum.reset(data, off, len);
+		return sum.value();
+	}
+
+	//MD5 of the window, 16 bytes.
+	public static byte[] strong(byte[] data, int off, int len) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			md.update(data, off, len);
+			return md.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.github.nodejs.lib;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.github.nodejs.vo.Buffer;
+import com.github.nodejs.vo.BufferPool;
+
+/**
+ * Runs Buffers through a Deflater or an Inflater, shared by the Deflate and
+ * Inflate transforms and by streams compressed on the wire.
+ * <p>
+ * What comes out is drawn from BufferPool and owned by the caller, who
+ * releases it once pushed or copied.
+ */
+public class Zlib {
+
+	private Zlib() {}
+
+	/**
+	 * @param flush Deflater.NO_FLUSH, SYNC_FLUSH or FULL_FLUSH.
+	 * @return what came out, possibly nothing.
+	 */
+	public static Buffer deflate(Deflater deflater, Buffer input, int flush) {
+		int len = input.length();
+		if (input.contents != null) {
+			deflater.setInput(input.contents, input.offset, len);
+		} else {
+			deflater.setInput(input.toBytes());
+		}
+		Buffer out = BufferPool.acquire(Math.max(64, len / 2 + 64));
+		int pos = 0;
+		while (true) {
+			if (pos == out.length()) {
+				out = grow(out, pos);
+			}
+			pos += deflater.deflate(out.contents, pos, out.length() - pos, flush);
+			// a full buffer may mean there is more to come.
+			if (pos < out.length() && deflater.needsInput()) {
+				break;
+			}
+		}
+		return trim(out, pos);
+	}
+
+	//Ends the deflate stream, returns whatever was still held back.
+	public static Buffer finish(Deflater deflater) {
+		deflater.finish();
+		Buffer out = BufferPool.acquire(64);
+		int pos = 0;
+		while (!deflater.finished()) {
+			if (pos == out.length()) {
+				out = grow(out, pos);
+			}
+			pos += deflater.deflate(out.contents, pos, out.length() - pos);
+		}
+		return trim(out, pos);
+	}
+
+	/**
+	 * @return what came out, possibly nothing.
+	 * @throws DataFormatException when input isn't what the deflater made, or
+	 * asks for a preset dictionary.
+	 */
+	public static Buffer inflate(Inflater inflater, Buffer input) throws DataFormatException {
+		int len = input.length();
+		if (input.contents != null) {
+			inflater.setInput(input.contents, input.offset, len);
+		} else {
+			inflater.setInput(input.toBytes());
+		}
+		Buffer out = BufferPool.acquire(Math.max(256, len * 4));
+		int pos = 0;
+		try {
+			while (true) {
+				if (pos == out.length()) {
+					out = grow(out, pos);
+				}
+				int n = inflater.inflate(out.contents, pos, out.length() - pos);
+				pos += n;
+				if (n == 0 && inflater.needsDictionary()) {
+					throw new DataFormatException("missing dictionary");
+				}
+				if (n == 0 && (inflater.needsInput() || inflater.finished())) {
+					break;
+				}
+			}
+		} catch (DataFormatException e) {
+			out.release();
+			throw e;
+		}
+		return trim(out, pos);
+	}
+
+	//Twice the room, keeping the first used bytes.
+	private static Buffer grow(Buffer out, int used) {
+		Buffer ret = BufferPool.acquire(out.length() * 2);
+		out.copy(ret, 0, 0, used);
+		out.release();
+		return ret;
+	}
+
+	private static Buffer trim(Buffer out, int used) {
+		if (used == 0) {
+			out.release();
+			return new Buffer(0);
+		}
+		// the slice carries the reference out had.
+		return out.slice(0, used);
+	}
+}
@@ -0,0 +1,552 @@
+package com.github.nodejs.socketio_stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.github.nkzawa.emitter.Emitter;
+import com.github.nkzawa.socketio.client.Ack;
+import com.github.nkzawa.thread.EventThread;
+import com.github.nodejs.lib.RollingChecksum;
+import com.github.nodejs.stream.FileIO;
+import com.github.nodejs.stream.FileReadStream;
+import com.github.nodejs.stream.FileWriteStream;
+import com.github.nodejs.stream.IOStream;
+import com.github.nodejs.stream.Writable;
+import com.github.nodejs.vo.Buffer;
+import com.github.nodejs.vo.ReadableChunk;
+import com.github.nodejs.vo.StreamOptions;
+
+/**
+ * rsync style upload of a file the receiving side has an older copy of.
+ * Both directions of one IOStream are used: the receiver sends the
+ * signatures of the blocks of its copy and ends its side, then the sender
+ * slides a rolling checksum over its file and sends back which blocks to
+ * copy from the old copy and the bytes in between. The new file is put
+ * together next to the old one and replaces it once complete.
+ * <p>
+ * Signatures are a 4 byte weak checksum and a 16 byte MD5 per full block.
+ * The delta is a run of OP_COPY (first block, count) and OP_DATA (length,
+ * bytes) records, numbers being big endian ints. Emits "finish" or "error".
+ */
+public class DeltaSync extends Emitter {
+
+	public static int blockSize = 8 * 1024;
+	private static final int SIGNATURE_SIZE = 20;
+	private static final byte OP_COPY = 0;
+	private static final byte OP_DATA = 1;
+	// literal bytes and copied blocks sent at once, at most.
+	private static final int MAX_LITERAL = 64 * 1024;
+	private static final int MAX_RUN = 64;
+
+	public String path;
+	// bytes sent as they are, and bytes the receiver had already.
+	public long literalBytes = 0;
+	public long matchedBytes = 0;
+	private boolean failed = false;
+
+	private DeltaSync(String filePath) {
+		path = filePath;
+	}
+
+	/**
+	 * @param socket
+	 * @param event stream event the delta is sent with.
+	 * @param filePath
+	 * @param header passed along, may be null.
+	 */
+	public static DeltaSync send(StreamSocket socket, String event, final String filePath, JSONObject header) {
+		final DeltaSync sync = new DeltaSync(filePath);
+		StreamOptions options = new StreamOptions();
+		// our side keeps writing after the signatures ended.
+		options.allowHalfOpen = true;
+		final IOStream stream = new IOStream(options);
+		JSONObject ret = new JSONObject();
+		try {
+			if (header != null) {
+				ret = new JSONObject(header.toString());
+			}
+			JSONObject delta = new JSONObject();
+			delta.put("size", FileIO.getSize(filePath));
+			delta.put("blockSize", blockSize);
+			ret.put("delta", delta);
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+		socket.emit(event, stream, ret);
+
+		final ByteArrayOutputStream signatures = new ByteArrayOutputStream();
+		stream.readStream.on("data", new Listener() {
+			@Override
+			public void call(Object... args) {
+				ReadableChunk chunk = (ReadableChunk) args[0];
+				if (chunk != null && chunk.bytes != null) {
+					byte[] bytes = chunk.bytes.toBytes();
+					signatures.write(bytes, 0, bytes.length);
+				}
+			}
+		});
+		stream.readStream.on("end", new Listener() {
+			@Override
+			public void call(Object... args) {
+				Encoder encoder = sync.new Encoder(signatures.toByteArray(), stream);
+				FileReadStream reader = FileIO.createReadStream(filePath, null);
+				reader.on("error", sync.onerror);
+				encoder.on("error", sync.onerror);
+				reader.pipe(encoder, null);
+			}
+		});
+		stream.on("error", sync.onerror);
+		stream.writeStream.on("error", sync.onerror);
+		stream.writeStream.on("finish", new Listener() {
+			@Override
+			public void call(Object... args) {
+				sync.emit("finish");
+			}
+		});
+		return sync;
+	}
+
+	/**
+	 * Brings filePath up to date with the file sent along with header.
+	 * @return
+	 */
+	public static DeltaSync receive(final IOStream stream, JSONObject header, final String filePath) {
+		final DeltaSync sync = new DeltaSync(filePath);
+		final long size;
+		final int block;
+		try {
+			JSONObject delta = header.getJSONObject("delta");
+			size = delta.getLong("size");
+			block = delta.getInt("blockSize");
+		} catch (Exception e) {
+			e.printStackTrace();
+			stream.emit("error", new Error("not a delta"));
+			return null;
+		}
+		// the signatures end before the delta does.
+		stream.allowHalfOpen = true;
+		stream.on("error", sync.onerror);
+
+		final String tempPath = filePath + ".delta";
+		StreamOptions options = new StreamOptions();
+		options.flags = "w";
+		final FileWriteStream writer = FileIO.createWriteStream(tempPath, options);
+		writer.on("error", sync.onerror);
+		writer.on("close", new Listener() {
+			@Override
+			public void call(Object... args) {
+				if (sync.failed) {
+					new File(tempPath).delete();
+					return;
+				}
+				File temp = new File(tempPath);
+				if (temp.length() != size) {
+					temp.delete();
+					sync.onerror.call(new Error("delta size mismatch"));
+				} else if (!temp.renameTo(new File(filePath))) {
+					sync.onerror.call(new Error("cannot replace " + filePath));
+				} else {
+					sync.emit("finish");
+				}
+			}
+		});
+		final Decoder decoder = sync.new Decoder(filePath, block, writer);
+		decoder.on("error", sync.onerror);
+		decoder.on("finish", new Listener() {
+			@Override
+			public void call(Object... args) {
+				decoder.close();
+				writer.end();
+			}
+		});
+		stream.pipe(decoder, null);
+
+		// signatures of the old copy, read on the I/O threads.
+		final EventThread.Loop loop = EventThread.loop();
+		FileIO.execute(new Runnable() {
+			@Override
+			public void run() {
+				final byte[] signatures = signaturesOf(filePath, block);
+				loop.exec(new Runnable() {
+					@Override
+					public void run() {
+						for (int off = 0; off < signatures.length; off += MAX_LITERAL) {
+							int len = Math.min(MAX_LITERAL, signatures.length - off);
+							stream.writeStream.write(new ReadableChunk(
+									new Buffer(signatures, off, len, "utf8")));
+						}
+						stream.writeStream.end();
+					}
+				});
+			}
+		});
+		return sync;
+	}
+
+	private static byte[] signaturesOf(String filePath, int block) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		File f = new File(filePath);
+		if (!f.exists()) {
+			return out.toByteArray();
+		}
+		try {
+			RandomAccessFile file = new RandomAccessFile(f, "r");
+			byte[] data = new byte[block];
+			long blocks = file.length() / block;
+			for (long i = 0; i < blocks; i++) {
+				file.readFully(data);
+				int weak = RollingChecksum.of(data, 0, block);
+				writeInt(out, weak);
+				byte[] strong = RollingChecksum.strong(data, 0, block);
+				out.write(strong, 0, strong.length);
+			}
+			file.close();
+		} catch (IOException e) {
+			// no usable old copy, everything gets sent.
+			e.printStackTrace();
+			out.reset();
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int v) {
+		out.write(v >>> 24);
+		out.write(v >>> 16);
+		out.write(v >>> 8);
+		out.write(v);
+	}
+
+	private static int readInt(byte[] b, int off) {
+		return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16)
+				| ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+	}
+
+	// Writes out to dest and calls cb once dest can take more.
+	private static void writeOut(Writable dest, ByteArrayOutputStream out, final Ack cb) {
+		byte[] bytes = out.toByteArray();
+		out.reset();
+		boolean more = true;
+		if (bytes.length > 0) {
+			more = dest.write(new ReadableChunk(new Buffer(bytes, "utf8")));
+		}
+		if (more) {
+			cb.call();
+		} else {
+			dest.once("drain", new Listener() {
+				@Override
+				public void call(Object... args) {
+					cb.call();
+				}
+			});
+		}
+	}
+
+	private Listener onerror = new Listener() {
+		@Override
+		public void call(Object... args) {
+			if (failed) {
+				return;
+			}
+			failed = true;
+			emit("error", args.length > 0 ? args[0] : null);
+		}
+	};
+
+	/**
+	 * Turns the new file into a delta against the signatures.
+	 */
+	private class Encoder extends Writable {
+		private final IOStream stream;
+		private final int count;
+		private final byte[] signatures;
+		// first block with a given weak checksum, and the next one with the same.
+		private final Map<Integer, Integer> first = new HashMap<Integer, Integer>();
+		private final int[] next;
+		private final RollingChecksum roll = new RollingChecksum();
+		private boolean rolling = false;
+		// bytes not sent yet start at base, the window starts at pos. Sent
+		// ones are only dropped once per chunk.
+		private byte[] buf = new byte[MAX_LITERAL + 2 * blockSize];
+		private int len = 0;
+		private int base = 0;
+		private int pos = 0;
+		private int runStart = -1;
+		private int runCount = 0;
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Encoder(byte[] sigs, IOStream dest) {
+			super(new StreamOptions());
+			stream = dest;
+			signatures = sigs;
+			count = sigs.length / SIGNATURE_SIZE;
+			next = new int[count];
+			// later blocks first, so that chains start at the lowest one.
+			for (int i = count - 1; i >= 0; i--) {
+				Integer weak = readInt(sigs, i * SIGNATURE_SIZE);
+				Integer head = first.get(weak);
+				next[i] = head != null ? head : -1;
+				first.put(weak, i);
+			}
+			on("finish", new Listener() {
+				@Override
+				public void call(Object... args) {
+					literal(len);
+					flushRun();
+					byte[] bytes = out.toByteArray();
+					out.reset();
+					if (bytes.length > 0) {
+						stream.writeStream.end(new ReadableChunk(new Buffer(bytes, "utf8")));
+					} else {
+						stream.writeStream.end();
+					}
+				}
+			});
+		}
+
+		@Override
+		public void _write(ReadableChunk chunk, String encoding, Ack cb) {
+			int n = chunk.length();
+			compact();
+			if (len + n > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+			}
+			chunk.bytes.copy(new Buffer(buf, len, n, "utf8"), 0, 0, n);
+			len += n;
+			scan();
+			writeOut(stream.writeStream, out, cb);
+		}
+
+		private void scan() {
+			while (len - pos >= blockSize) {
+				if (!rolling) {
+					roll.reset(buf, pos, blockSize);
+					rolling = true;
+				}
+				int index = match();
+				if (index >= 0) {
+					literal(pos);
+					copy(index);
+					pos += blockSize;
+					base = pos;
+					rolling = false;
+					continue;
+				}
+				if (len - pos == blockSize) {
+					// wait for the byte after the window.
+					break;
+				}
+				roll.roll(buf[pos], buf[pos + blockSize]);
+				pos++;
+				if (pos - base >= MAX_LITERAL) {
+					literal(pos);
+				}
+			}
+		}
+
+		private int match() {
+			Integer index = first.get(roll.value());
+			if (index == null) {
+				return -1;
+			}
+			byte[] strong = RollingChecksum.strong(buf, pos, blockSize);
+			for (int i = index; i >= 0; i = next[i]) {
+				int off = i * SIGNATURE_SIZE + 4;
+				boolean same = true;
+				for (int j = 0; j < strong.length && same; j++) {
+					same = strong[j] == signatures[off + j];
+				}
+				if (same) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		// Sends the bytes up to end as they are.
+		private void literal(int end) {
+			int n = end - base;
+			if (n <= 0) {
+				return;
+			}
+			flushRun();
+			out.write(OP_DATA);
+			writeInt(out, n);
+			out.write(buf, base, n);
+			literalBytes += n;
+			base = end;
+		}
+
+		private void copy(int index) {
+			if (runCount > 0 && index == runStart + runCount && runCount < MAX_RUN) {
+				runCount++;
+			} else {
+				flushRun();
+				runStart = index;
+				runCount = 1;
+			}
+			matchedBytes += blockSize;
+		}
+
+		private void flushRun() {
+			if (runCount > 0) {
+				out.write(OP_COPY);
+				writeInt(out, runStart);
+				writeInt(out, runCount);
+				runCount = 0;
+			}
+		}
+
+		// Forgets the bytes sent, the window moves along with the rest.
+		private void compact() {
+			if (base > 0) {
+				System.arraycopy(buf, base, buf, 0, len - base);
+				len -= base;
+				pos -= base;
+				base = 0;
+			}
+		}
+	}
+
+	/**
+	 * Puts the new file together from a delta and the old copy.
+	 */
+	private class Decoder extends Writable {
+		private final String oldPath;
+		private final int block;
+		private final Writable dest;
+		private RandomAccessFile old = null;
+		private final byte[] header = new byte[9];
+		private int headerLen = 0;
+		// bytes of the current OP_DATA still to come.
+		private int dataLeft = 0;
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// literal bytes and {first block, count} copies of the current chunk.
+		private final ArrayList<Object> pieces = new ArrayList<Object>();
+
+		Decoder(String filePath, int blockSize, Writable writer) {
+			super(new StreamOptions());
+			oldPath = filePath;
+			block = blockSize;
+			dest = writer;
+		}
+
+		@Override
+		public void _write(ReadableChunk chunk, String encoding, Ack cb) {
+			byte[] src = chunk.bytes.toBytes();
+			int off = 0;
+			int n = src.length;
+			try {
+				while (n > 0) {
+					if (dataLeft > 0) {
+						int cpy = Math.min(dataLeft, n);
+						out.write(src, off, cpy);
+						off += cpy;
+						n -= cpy;
+						dataLeft -= cpy;
+						continue;
+					}
+					header[headerLen++] = src[off++];
+					n--;
+					int need = header[0] == OP_COPY ? 9 : 5;
+					if (headerLen < need) {
+						continue;
+					}
+					headerLen = 0;
+					if (header[0] == OP_COPY) {
+						pieces.add(out.toByteArray());
+						out.reset();
+						pieces.add(new int[] {readInt(header, 1), readInt(header, 5)});
+					} else if (header[0] == OP_DATA) {
+						dataLeft = readInt(header, 1);
+					} else {
+						throw new IOException("bad delta");
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				pieces.clear();
+				out.reset();
+				cb.call(new Error(e.getMessage()));
+				return;
+			}
+			if (pieces.isEmpty()) {
+				writeOut(dest, out, cb);
+				return;
+			}
+			pieces.add(out.toByteArray());
+			out.reset();
+			Object[] todo = pieces.toArray();
+			pieces.clear();
+			assemble(todo, cb);
+		}
+
+		// Reads the copied blocks on the I/O threads, cb is held until the
+		// chunk is written out so that the next one waits.
+		private void assemble(final Object[] todo, final Ack cb) {
+			final EventThread.Loop loop = EventThread.loop();
+			FileIO.execute(new Runnable() {
+				@Override
+				public void run() {
+					final ByteArrayOutputStream ret = new ByteArrayOutputStream();
+					IOException err = null;
+					try {
+						for (Object piece : todo) {
+							if (piece instanceof int[]) {
+								copyBlocks(ret, ((int[]) piece)[0], ((int[]) piece)[1]);
+							} else {
+								byte[] bytes = (byte[]) piece;
+								ret.write(bytes, 0, bytes.length);
+							}
+						}
+					} catch (IOException e) {
+						e.printStackTrace();
+						err = e;
+					}
+					final IOException error = err;
+					loop.exec(new Runnable() {
+						@Override
+						public void run() {
+							if (error != null) {
+								cb.call(new Error(error.getMessage()));
+							} else {
+								writeOut(dest, ret, cb);
+							}
+						}
+					});
+				}
+			});
+		}
+
+		private void copyBlocks(ByteArrayOutputStream ret, int start, int count) throws IOException {
+			if (old == null) {
+				old = new RandomAccessFile(oldPath, "r");
+			}
+			byte[] data = new byte[block];
+			old.seek((long) start * block);
+			for (int i = 0; i < count; i++) {
+				old.readFully(data);
+				ret.write(data, 0, block);
+			}
+		}
+
+		void close() {
+			if (old != null) {
+				try {
+					old.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				old = null;
+			}
+		}
+	}
+}
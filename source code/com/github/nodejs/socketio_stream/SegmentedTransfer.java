@@ -0,0 +1,219 @@
+package com.github.nodejs.socketio_stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.github.nkzawa.emitter.Emitter;
+import com.github.nkzawa.thread.EventThread;
+import com.github.nodejs.stream.FileIO;
+import com.github.nodejs.stream.FileReadStream;
+import com.github.nodejs.stream.FileWriteStream;
+import com.github.nodejs.stream.IOStream;
+import com.github.nodejs.vo.SocketError;
+import com.github.nodejs.vo.StreamOptions;
+
+/**
+ * Sends one file as several byte ranges, each over an IOStream of its own,
+ * so that they share the connection instead of waiting on each other's
+ * round trips. The receiving side writes every range at its offset.
+ * <p>
+ * Every segment is a stream event of its own, carrying a copy of the given
+ * header with a "segment" object added. Emits "finish" once all segments
+ * are through, or "error" with the first one that failed.
+ */
+public class SegmentedTransfer extends Emitter {
+
+	// segments smaller than this aren't worth a stream of their own.
+	public static long minSegmentSize = 1024 * 1024;
+	// transfers being received, by id.
+	private static Map<String, SegmentedTransfer> incoming = new ConcurrentHashMap<String, SegmentedTransfer>();
+
+	public String id;
+	public String path;
+	public long size;
+	public int count;
+	private int done = 0;
+	private boolean failed = false;
+	// what the segments run on here, all of it goes once one of them failed.
+	private final List<IOStream> streams = new ArrayList<IOStream>();
+	private final List<FileReadStream> readers = new ArrayList<FileReadStream>();
+	private final List<FileWriteStream> writers = new ArrayList<FileWriteStream>();
+
+	private SegmentedTransfer(String transferId, String filePath, long fileSize, int segments) {
+		id = transferId;
+		path = filePath;
+		size = fileSize;
+		count = segments;
+	}
+
+	/**
+	 * @param socket
+	 * @param event stream event every segment is sent with.
+	 * @param filePath
+	 * @param segments how many streams to use at most.
+	 * @param header passed along with every segment, may be null.
+	 */
+	public static SegmentedTransfer send(StreamSocket socket, String event, String filePath,
+			int segments, JSONObject header) {
+		long size = FileIO.getSize(filePath);
+		int count = (int) Math.max(1, Math.min(segments, size / minSegmentSize));
+		long segmentSize = (size + count - 1) / count;
+		final SegmentedTransfer transfer = new SegmentedTransfer(
+				UUID.randomUUID().toString(), filePath, size, count);
+		for (int i = 0; i < count; i++) {
+			long start = i * segmentSize;
+			long end = Math.min(size, start + segmentSize) - 1;
+			StreamOptions options = new StreamOptions();
+			options.start = start;
+			options.end = end;
+			IOStream stream = new IOStream(options);
+			socket.emit(event, stream, transfer.segmentHeader(header, i, start, end));
+			FileReadStream reader = FileIO.createReadStream(filePath, options);
+			transfer.streams.add(stream);
+			transfer.readers.add(reader);
+			reader.on("error", transfer.onerror);
+			stream.on("error", transfer.onerror);
+			stream.writeStream.on("error", transfer.onerror);
+			stream.writeStream.on("finish", transfer.onsegment);
+			reader.pipe(stream.writeStream, null);
+		}
+		return transfer;
+	}
+
+	/**
+	 * Writes a segment received with header into filePath, at its offset.
+	 * @return the transfer the segment is part of, the same for all of them.
+	 */
+	public static SegmentedTransfer receive(IOStream stream, JSONObject header, String filePath) {
+		String transferId;
+		long size;
+		long start;
+		int count;
+		try {
+			JSONObject segment = header.getJSONObject("segment");
+			transferId = segment.getString("transfer");
+			size = segment.getLong("size");
+			start = segment.getLong("start");
+			count = segment.getInt("count");
+		} catch (Exception e) {
+			e.printStackTrace();
+			stream.emit("error", new Error("not a segment"));
+			return null;
+		}
+		SegmentedTransfer transfer;
+		synchronized (incoming) {
+			transfer = incoming.get(transferId);
+			if (transfer == null) {
+				transfer = new SegmentedTransfer(transferId, filePath, size, count);
+				incoming.put(transferId, transfer);
+			}
+		}
+		StreamOptions options = new StreamOptions();
+		// segments land side by side in a file grown to its full size.
+		options.flags = "r+";
+		options.start = start;
+		options.preallocate = size;
+		FileWriteStream writer = FileIO.createWriteStream(filePath, options);
+		synchronized (transfer) {
+			transfer.streams.add(stream);
+			transfer.writers.add(writer);
+		}
+		writer.on("error", transfer.onerror);
+		stream.on("error", transfer.onerror);
+		// closed means all of it is on the disk.
+		writer.on("close", transfer.onsegment);
+		stream.pipe(writer, null);
+		return transfer;
+	}
+
+	private JSONObject segmentHeader(JSONObject header, int index, long start, long end) {
+		JSONObject ret = new JSONObject();
+		try {
+			if (header != null) {
+				ret = new JSONObject(header.toString());
+			}
+			JSONObject segment = new JSONObject();
+			segment.put("transfer", id);
+			segment.put("index", index);
+			segment.put("count", count);
+			segment.put("start", start);
+			segment.put("end", end);
+			segment.put("size", size);
+			ret.put("segment", segment);
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+		return ret;
+	}
+
+	private Listener onsegment = new Listener() {
+		@Override
+		public void call(Object... args) {
+			boolean finished;
+			synchronized (SegmentedTransfer.this) {
+				finished = ++done == count && !failed;
+			}
+			if (!finished) {
+				return;
+			}
+			if (incoming.remove(id) == null) {
+				emit("finish");
+				return;
+			}
+			// whatever was in the file beyond its new size, cut on the I/O threads.
+			final EventThread.Loop loop = EventThread.loop();
+			FileIO.execute(new Runnable() {
+				@Override
+				public void run() {
+					FileIO.truncate(path, size);
+					loop.exec(new Runnable() {
+						@Override
+						public void run() {
+							emit("finish");
+						}
+					});
+				}
+			});
+		}
+	};
+
+	private Listener onerror = new Listener() {
+		@Override
+		public void call(Object... args) {
+			List<IOStream> failing;
+			List<FileReadStream> reading;
+			List<FileWriteStream> writing;
+			synchronized (SegmentedTransfer.this) {
+				if (failed) {
+					return;
+				}
+				failed = true;
+				failing = new ArrayList<IOStream>(streams);
+				reading = new ArrayList<FileReadStream>(readers);
+				writing = new ArrayList<FileWriteStream>(writers);
+			}
+			incoming.remove(id);
+			// the other segments stop too, instead of going on with a file
+			// that's given up.
+			for (FileReadStream reader : reading) {
+				reader.destroy();
+			}
+			for (FileWriteStream writer : writing) {
+				writer.destroy();
+			}
+			for (IOStream stream : failing) {
+				if (!stream.destroyed) {
+					// lets the remote side of the segment know as well.
+					stream._fail(new SocketError("segmented transfer failed"));
+				}
+			}
+			emit("error", args.length > 0 ? args[0] : null);
+		}
+	};
+}
@@ -0,0 +1,323 @@
+package com.github.nodejs.socketio_stream;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.nkzawa.socketio.client.Ack;
+import com.github.nkzawa.socketio.client.Socket;
+
+/**
+ * Interleaves the messages of concurrent streams sharing one socket with
+ * deficit round robin, so every stream gets a share of the connection in
+ * proportion to its priority. Each stream may have its share of
+ * maxInflightBytes waiting for their ack, by priority among the streams with
+ * chunks queued or in flight. Anything beyond queues up for that stream
+ * alone, a stream whose reader is slow to ack doesn't hold up the others.
+ * Messages of one stream always go out in the order they were queued.
+ * <p>
+ * With retain set, chunks which went out are kept until acked, so that they
+ * can be sent again by {@link #resume} after a reconnect.
+ */
+class StreamScheduler {
+
+	// bytes a stream of priority 1 may send each round.
+	private static final int QUANTUM = 16 * 1024;
+
+	int maxInflightBytes = 256 * 1024;
+	boolean retain = false;
+	// bumped by clear() and suspend() so that late acks are not counted twice.
+	private int generation = 0;
+	private final Socket sio;
+	// streams with messages queued or in flight, and the ones with queued
+	// messages in round robin order.
+	private final Map<String, Flow> flows = new HashMap<String, Flow>();
+	private final ArrayDeque<Flow> active = new ArrayDeque<Flow>();
+	// streams held back until the remote side told us where to carry on.
+	private final Set<String> paused = new HashSet<String>();
+	// what went out per stream, only kept when retain is set.
+	private final Map<String, Sent> sent = new HashMap<String, Sent>();
+
+	StreamScheduler(Socket socket) {
+		sio = socket;
+	}
+
+	/**
+	 * Queues a message for streamId. When the last of args is an Ack, size
+	 * counts against the stream's share of maxInflightBytes until that ack
+	 * comes back.
+	 */
+	synchronized void enqueue(String streamId, int priority, int size, String event, Object... args) {
+		Flow flow = flowOf(streamId);
+		if (flow.queue.isEmpty()) {
+			active.add(flow);
+		}
+		flow.weight = priority > 0 ? priority : 1;
+		boolean acked = args.length > 0 && args[args.length - 1] instanceof Ack;
+		Frame frame = new Frame(streamId, event, args, acked ? size : 0, acked);
+		if (acked) {
+			args[args.length - 1] = new ScheduledAck(frame, (Ack) args[args.length - 1]);
+		}
+		if (retain && acked) {
+			frame.seq = sentOf(streamId).nextSeq++;
+		}
+		flow.queue.add(frame);
+		pump();
+	}
+
+	// drops everything queued, the acks of messages in flight won't come back.
+	synchronized void clear() {
+		flows.clear();
+		active.clear();
+		paused.clear();
+		sent.clear();
+		generation++;
+	}
+
+	/**
+	 * The connection went away but the streams are kept: hold their messages
+	 * back until {@link #resume} is called for each of them.
+	 */
+	synchronized void suspend(Collection<String> streamIds) {
+		paused.addAll(streamIds);
+		for (Flow flow : flows.values()) {
+			flow.inflight = 0;
+		}
+		generation++;
+	}
+
+	/**
+	 * Carries on with a suspended stream. Chunks the remote side already got
+	 * count as acked, the rest go out again ahead of anything queued since.
+	 *
+	 * @param received how many chunks of this stream the remote side got.
+	 * @param ended whether the remote side got our "-end".
+	 * @return chunks of the stream on their way without a new "-read", the
+	 * ones sent again and the ones queued before the connection dropped.
+	 */
+	synchronized int resume(String streamId, long received, boolean ended) {
+		paused.remove(streamId);
+		Sent s = sent.get(streamId);
+		ArrayDeque<Frame> delivered = new ArrayDeque<Frame>();
+		if (s != null) {
+			ArrayDeque<Frame> resend = new ArrayDeque<Frame>();
+			for (Frame frame : s.unacked) {
+				if (frame.seq < received) {
+					delivered.add(frame);
+				} else {
+					resend.add(frame);
+				}
+			}
+			s.unacked.clear();
+			if (s.end != null && !ended) {
+				resend.add(s.end);
+			}
+			s.end = null;
+			if (!resend.isEmpty()) {
+				Flow flow = flowOf(streamId);
+				if (flow.queue.isEmpty()) {
+					active.add(flow);
+				}
+				while (!resend.isEmpty()) {
+					flow.queue.addFirst(resend.pollLast());
+				}
+			}
+		}
+		int pending = 0;
+		Flow flow = flows.get(streamId);
+		if (flow != null) {
+			for (Frame frame : flow.queue) {
+				if (frame.acked) {
+					pending++;
+				}
+			}
+		}
+		// only now, the callbacks may well queue more chunks of this stream.
+		for (Frame frame : delivered) {
+			((ScheduledAck) frame.args[frame.args.length - 1]).complete();
+		}
+		pump();
+		return pending;
+	}
+
+	// the stream is gone, nothing of it will be sent again.
+	synchronized void forget(String streamId) {
+		sent.remove(streamId);
+		paused.remove(streamId);
+	}
+
+	// same as forget, dropping whatever of the stream is still queued.
+	synchronized void drop(String streamId) {
+		forget(streamId);
+		Flow flow = flows.remove(streamId);
+		if (flow != null) {
+			active.remove(flow);
+		}
+	}
+
+	private Flow flowOf(String streamId) {
+		Flow flow = flows.get(streamId);
+		if (flow == null) {
+			flow = new Flow(streamId);
+			flows.put(streamId, flow);
+		}
+		return flow;
+	}
+
+	private Sent sentOf(String streamId) {
+		Sent s = sent.get(streamId);
+		if (s == null) {
+			s = new Sent();
+			sent.put(streamId, s);
+		}
+		return s;
+	}
+
+	private synchronized void onack(Frame frame, int gen) {
+		if (retain) {
+			Sent s = sent.get(frame.streamId);
+			if (s != null) {
+				s.unacked.remove(frame);
+			}
+		}
+		Flow flow = flows.get(frame.streamId);
+		if (gen == generation && flow != null) {
+			flow.inflight -= frame.size;
+			if (flow.inflight <= 0 && flow.queue.isEmpty()) {
+				flows.remove(flow.id);
+			}
+			pump();
+		}
+	}
+
+	private void pump() {
+		int weights = 0;
+		for (Flow flow : flows.values()) {
+			weights += flow.weight;
+		}
+		// consecutive paused or saturated streams seen, once all of them are
+		// we're done.
+		int skipped = 0;
+		while (!active.isEmpty() && skipped < active.size()) {
+			Flow flow = active.peekFirst();
+			Frame frame = flow.queue.peekFirst();
+			long share = (long) maxInflightBytes * flow.weight / weights;
+			if (paused.contains(flow.id) || (frame.size > 0 && flow.inflight > 0
+					&& flow.inflight + frame.size > share)) {
+				// held back, or waiting for acks of its own.
+				active.addLast(active.pollFirst());
+				skipped++;
+				continue;
+			}
+			// its deficit grows each turn, it will get to send.
+			skipped = 0;
+			if (!flow.visited) {
+				flow.visited = true;
+				flow.deficit += QUANTUM * flow.weight;
+			}
+			if (frame.size > flow.deficit) {
+				// this stream used up its turn.
+				flow.visited = false;
+				active.addLast(active.pollFirst());
+				continue;
+			}
+			flow.queue.pollFirst();
+			flow.deficit -= frame.size;
+			flow.inflight += frame.size;
+			if (flow.queue.isEmpty()) {
+				active.pollFirst();
+				if (flow.inflight <= 0) {
+					flows.remove(flow.id);
+				}
+			}
+			if (frame.acked) {
+				((ScheduledAck) frame.args[frame.args.length - 1]).gen = generation;
+			}
+			if (retain) {
+				if (frame.acked) {
+					sentOf(frame.streamId).unacked.add(frame);
+				} else if (frame.event.endsWith("-end")) {
+					sentOf(frame.streamId).end = frame;
+				}
+			}
+			sio.emit(frame.event, frame.args);
+		}
+	}
+
+	private static class Frame {
+		final String streamId;
+		final String event;
+		final Object[] args;
+		final int size;
+		final boolean acked;
+		// position among the chunks of its stream, when retained.
+		long seq = -1;
+
+		Frame(String streamId, String event, Object[] args, int size, boolean acked) {
+			this.streamId = streamId;
+			this.event = event;
+			this.args = args;
+			this.size = size;
+			this.acked = acked;
+		}
+	}
+
+	private static class Flow {
+		final String id;
+		final ArrayDeque<Frame> queue = new ArrayDeque<Frame>();
+		int weight = 1;
+		int deficit = 0;
+		// bytes sent and not acked yet.
+		int inflight = 0;
+		// deficit already topped up for the current turn.
+		boolean visited = false;
+
+		Flow(String id) {
+			this.id = id;
+		}
+	}
+
+	private static class Sent {
+		long nextSeq = 0;
+		// chunks sent in seq order and not acked yet.
+		final ArrayDeque<Frame> unacked = new ArrayDeque<Frame>();
+		// our "-end", once it went out.
+		Frame end;
+	}
+
+	private class ScheduledAck implements Ack {
+		private final Frame frame;
+		private final Ack ack;
+		// generation the frame was last sent in.
+		int gen;
+		private boolean done = false;
+
+		ScheduledAck(Frame frame, Ack ack) {
+			this.frame = frame;
+			this.ack = ack;
+		}
+
+		// acked by a resume rather than by the remote side.
+		void complete() {
+			if (!done) {
+				done = true;
+				ack.call();
+			}
+		}
+
+		@Override
+		public void call(Object... args) {
+			synchronized (StreamScheduler.this) {
+				if (done) {
+					return;
+				}
+				done = true;
+			}
+			onack(frame, gen);
+			ack.call(args);
+		}
+	}
+}
@@ -1,11 +1,19 @@
 package com.github.nodejs.socketio_stream;
 
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -13,27 +21,65 @@ import org.json.JSONException;
 import com.github.nkzawa.emitter.Emitter;
 import com.github.nkzawa.socketio.client.Ack;
 import com.github.nkzawa.socketio.client.Socket;
+import com.github.nkzawa.thread.EventThread;
+import com.github.nodejs.lib.Zlib;
 import com.github.nodejs.stream.IOStream;
+import com.github.nodejs.vo.Buffer;
 import com.github.nodejs.vo.ReadableChunk;
 import com.github.nodejs.vo.SocketError;
 
 public class StreamSocket extends Emitter {
 
 	private Socket sio;
+	private StreamScheduler scheduler;
 	private String uuid;
 	private ConcurrentMap<String, IOStream> streams = new ConcurrentHashMap<String, IOStream>();
 	private static final String eventName = "stream";
+	
+	// Capability flags advertised to the remote writer with every "-read".
+	// Peers which don't know about them (e.g. node.js socket.io-stream) just
+	// ignore the extra argument and keep on sending base64 strings.
+	public static final int CAP_BINARY = 1;
+	// Every chunk carries its CRC32 and "-end" a CRC32 over all of those, so
+	// that corrupt, lost or reordered chunks fail the stream. Off by default.
+	public static final int CAP_CHECKSUM = 2;
+	// Binary chunks may come deflated, as one zlib stream per IOStream
+	// flushed at every chunk. Off by default.
+	public static final int CAP_DEFLATE = 4;
+	// Streams are carried across reconnects, see setResumable().
+	public static final int CAP_RESUME = 8;
+	public int capabilities = CAP_BINARY;
+	// how long streams wait for the remote side's "-resume" after a reconnect.
+	public long resumeTimeout = 10000;
+	private static final Timer resumeTimer = new Timer("StreamSocket", true);
+	private boolean resumable = false;
+	// the remote side advertised CAP_RESUME.
+	private boolean peerResumable = false;
+	// the connection dropped and the streams wait for it to come back.
+	private boolean suspended = false;
+	// streams which haven't heard back since the reconnect.
+	private Set<String> awaitingResume = new HashSet<String>();
+	private TimerTask resumeTask = null;
 	String[] exportEvents = new String[]{"error", "upload"};
 	
 	//Bidirectional stream socket which wraps Socket.IO.
 	public StreamSocket(Socket socket) {
 		uuid = UUID.randomUUID().toString();
 		sio = socket;
+		scheduler = new StreamScheduler(sio);
 		sio.on(eventName + "-read", _onread);
 		sio.on(eventName + "-write", _onwrite);
 		sio.on(eventName + "-end", _onend);
 		sio.on(eventName + "-error", _onerror);
+		sio.on(eventName + "-resume", _onresume);
 		sio.on("disconnect", _ondisconnect);
+		sio.on("connect", _onconnect);
+		sio.on("reconnect_failed", new Listener() {
+			@Override
+			public void call(Object... args) {
+				abort();
+			}
+		});
 		sio.on("error", new Listener() {
 			@Override
 			public void call(Object... arg0) {
@@ -75,8 +121,60 @@ public class StreamSocket extends Emitter {
 		});
 	}
 	
+	/**
+	 * @param bytes how many bytes of written chunks may await their ack at once,
+	 * split between the busy streams of this socket by priority.
+	 */
+	public void setMaxInflightBytes(int bytes) {
+		scheduler.maxInflightBytes = bytes;
+	}
+	
+	/**
+	 * Keeps the streams open while the Manager reconnects, and carries them
+	 * on from where they stopped once it did. Only done once the remote side
+	 * advertised CAP_RESUME, streams which get no "-resume" within
+	 * resumeTimeout of the reconnect are aborted.
+	 * @param resumable
+	 */
+	public void setResumable(boolean resumable) {
+		this.resumable = resumable;
+		scheduler.retain = resumable;
+		if (resumable) {
+			capabilities |= CAP_RESUME;
+		} else {
+			capabilities &= ~CAP_RESUME;
+		}
+	}
+	
+	private int priorityOf(String streamId) {
+		IOStream stream = streams.get(streamId);
+		return stream != null ? stream.priority : 1;
+	}
+	
 	public void _end(String streamId) {
-		sio.emit(eventName + "-end", streamId);
+		IOStream stream = streams.get(streamId);
+		// queued behind the stream's pending writes.
+		if (stream != null && (stream.peerCapabilities & CAP_CHECKSUM) != 0) {
+			scheduler.enqueue(streamId, stream.priority, 0, eventName + "-end",
+					streamId, stream.sentDigest.getValue());
+		} else {
+			scheduler.enqueue(streamId, priorityOf(streamId), 0, eventName + "-end", streamId);
+		}
+	}
+	
+	// toBytes() hands out the backing array itself when it can.
+	private static byte[] copyOf(Buffer buf) {
+		Buffer ret = new Buffer(buf.length());
+		buf.copy(ret, 0);
+		return ret.contents;
+	}
+	
+	// Adds a chunk's checksum to a stream digest.
+	private static void fold(CRC32 digest, long crc) {
+		digest.update((int) (crc >>> 24));
+		digest.update((int) (crc >>> 16));
+		digest.update((int) (crc >>> 8));
+		digest.update((int) crc);
 	}
 	
 	public void _error(String streamId, SocketError err) {
@@ -85,16 +183,53 @@ public class StreamSocket extends Emitter {
 	
 	public void cleanup(String streamId)  {
 		streams.remove(streamId);
+		scheduler.forget(streamId);
 	}
 	
 	//Notifies the read event.
 	public void _read(String streamId, int size) {
-		sio.emit(eventName + "-read", streamId, size);
+		sio.emit(eventName + "-read", streamId, size, capabilities);
 	}
 	
 	//Requests to write a chunk.
 	public void _write(String streamId, ReadableChunk chunk, Ack cb) {
-		sio.emit(eventName + "-write", streamId, chunk.encodeBytesToBase64Str(), "base64", cb);
+		IOStream stream = streams.get(streamId);
+		int caps = stream != null ? stream.peerCapabilities : 0;
+		Object data;
+		String encoding;
+		int size = chunk.length();
+		// checksums are over what the application wrote.
+		long crc = (caps & CAP_CHECKSUM) != 0 && chunk.bytes != null ? chunk.bytes.crc32() : -1;
+		if ((caps & (CAP_BINARY | CAP_DEFLATE)) == (CAP_BINARY | CAP_DEFLATE)
+				&& chunk.bytes != null && stream.compressionLevel != Deflater.NO_COMPRESSION) {
+			if (stream.deflater == null) {
+				stream.deflater = new Deflater(stream.compressionLevel);
+			}
+			Buffer deflated = Zlib.deflate(stream.deflater, chunk.bytes, Deflater.SYNC_FLUSH);
+			// frames may be kept for a resume, so out of the pool.
+			data = deflated.toBytes();
+			encoding = "deflate";
+			size = deflated.length();
+			deflated.release();
+		} else if ((caps & CAP_BINARY) != 0 && chunk.bytes != null) {
+			// the chunk rides as a binary attachment of the socket.io packet.
+			// The writer may have its ack already and reuse the array, while the
+			// frame waits in the scheduler or is kept for a resume: it takes a
+			// copy of its own.
+			data = copyOf(chunk.bytes);
+			encoding = "buffer";
+		} else {
+			data = chunk.encodeBytesToBase64Str();
+			encoding = "base64";
+		}
+		if (crc >= 0) {
+			fold(stream.sentDigest, crc);
+			scheduler.enqueue(streamId, stream.priority, size, eventName + "-write",
+					streamId, data, encoding, crc, cb);
+		} else {
+			scheduler.enqueue(streamId, priorityOf(streamId), size, eventName + "-write",
+					streamId, data, encoding, cb);
+		}
 	}
 	
 	private Listener _onread = new Listener() {
@@ -103,11 +238,16 @@ public class StreamSocket extends Emitter {
 			String streamId = args.length > 0 ? (String) args[0] : null;
 //			Log.d("jerome", "stream socket, _onread, streamId:" + streamId);
 			int size = args.length > 1 ? (int) args[1] : 0;
+			int caps = args.length > 2 && args[2] instanceof Number ? ((Number) args[2]).intValue() : 0;
 			if (streamId == null) {
 				return;
 			}
+			if ((caps & CAP_RESUME) != 0) {
+				peerResumable = true;
+			}
 			IOStream stream = streams.get(streamId);
 			if (stream != null) {
+				stream.peerCapabilities = caps;
 				stream._onread.call(size);
 			} else {
 				_error(streamId, new SocketError("invalid stream id"));
@@ -125,19 +265,51 @@ public class StreamSocket extends Emitter {
 					chunk = (ReadableChunk) args[1];
 				} else if (args[1] instanceof String) {
 					chunk = new ReadableChunk((String) args[1]);
+				} else if (args[1] instanceof byte[]) {
+					chunk = new ReadableChunk(new Buffer((byte[]) args[1], "utf8"));
 				}
 			}
 			String encoding = args.length > 2 ? (String) args[2] : null;
-			Ack cb = args.length > 3 ? (Ack) args[3] : null;
+			// a checksum goes in between when the remote writer was asked for it.
+			Long crc = args.length > 4 && args[3] instanceof Number ? ((Number) args[3]).longValue() : null;
+			Ack cb = args.length > 3 && args[args.length - 1] instanceof Ack ? (Ack) args[args.length - 1] : null;
 			if (streamId == null) {
 				return;
 			}
 			IOStream stream = streams.get(streamId);
 			if (stream != null) {
+				stream.framesReceived++;
+				boolean inflated = false;
 				if ("base64".equals(encoding)) {
 					chunk.decodeBase64StrToBytes();
+				} else if ("deflate".equals(encoding) && chunk != null && chunk.bytes != null) {
+					if (stream.inflater == null) {
+						stream.inflater = new Inflater();
+					}
+					try {
+						chunk = new ReadableChunk(Zlib.inflate(stream.inflater, chunk.bytes));
+					} catch (DataFormatException e) {
+						stream._fail(new SocketError("bad deflate data"));
+						return;
+					}
+					encoding = "buffer";
+					inflated = true;
+				}
+				if (crc != null && chunk != null && chunk.bytes != null) {
+					if (chunk.bytes.crc32() != crc) {
+						if (inflated) {
+							chunk.release();
+						}
+						stream._fail(new SocketError("checksum mismatch"));
+						return;
+					}
+					fold(stream.receivedDigest, crc);
 				}
 				stream._onwrite.call(chunk, encoding, cb);
+				if (inflated) {
+					// the stream holds its own reference.
+					chunk.release();
+				}
 			} else {
 				_error(streamId, new SocketError("invalid stream id"));
 			}
@@ -153,6 +325,12 @@ public class StreamSocket extends Emitter {
 			}
 			IOStream stream = streams.get(streamId);
 			if (stream != null) {
+				if (args.length > 1 && args[1] instanceof Number
+						&& ((Number) args[1]).longValue() != stream.receivedDigest.getValue()) {
+					stream._fail(new SocketError("digest mismatch"));
+					return;
+				}
+				stream.remoteEnded = true;
 				stream._end();
 			} else {
 				_error(streamId, new SocketError("invalid stream id"));
@@ -181,20 +359,118 @@ public class StreamSocket extends Emitter {
 	
 	private Listener _ondisconnect = new Listener() {
 		@Override
-		public void call(Object... arg0) {
-			Iterator<Entry<String, IOStream>> iter = streams.entrySet().iterator();
-			while (iter.hasNext()) {
-				Map.Entry entry = (Map.Entry) iter.next();
-				IOStream stream = (IOStream) entry.getValue();
-				stream.destroy();
-				// Close streams when the underlaying
-				// socket.io connection is closed (regardless why)
-				stream.emit("close");
-				stream.emit("error", new Error("Connection aborted"));
+		public void call(Object... args) {
+			String reason = args.length > 0 ? (String) args[0] : null;
+			if (resumable && peerResumable && !"io client disconnect".equals(reason)
+					&& !"io server disconnect".equals(reason)) {
+				// the Manager will try to reconnect, see _onconnect.
+				suspended = true;
+				scheduler.suspend(streams.keySet());
+				return;
 			}
+			abort();
 		}
 	};
 	
+	private Listener _onconnect = new Listener() {
+		@Override
+		public void call(Object... args) {
+			if (!suspended) {
+				return;
+			}
+			suspended = false;
+			for (IOStream stream : streams.values()) {
+				awaitingResume.add(stream.id);
+				// tell the remote side how far we got, it replies the same.
+				sio.emit(eventName + "-resume", stream.id, stream.framesReceived, stream.remoteEnded);
+				stream._onreconnect();
+			}
+			if (!awaitingResume.isEmpty()) {
+				scheduleResumeTimeout();
+			}
+		}
+	};
+	
+	// Aborts the streams the remote side didn't resume in time.
+	private void scheduleResumeTimeout() {
+		cancelResumeTimeout();
+		final EventThread.Loop loop = EventThread.loop();
+		resumeTask = new TimerTask() {
+			@Override
+			public void run() {
+				final TimerTask task = this;
+				loop.exec(new Runnable() {
+					@Override
+					public void run() {
+						if (resumeTask != task) {
+							return;
+						}
+						resumeTask = null;
+						for (String streamId : awaitingResume) {
+							IOStream stream = streams.get(streamId);
+							scheduler.drop(streamId);
+							if (stream != null) {
+								abort(stream);
+							}
+						}
+						awaitingResume.clear();
+					}
+				});
+			}
+		};
+		resumeTimer.schedule(resumeTask, resumeTimeout);
+	}
+	
+	private void cancelResumeTimeout() {
+		if (resumeTask != null) {
+			resumeTask.cancel();
+			resumeTask = null;
+		}
+	}
+	
+	private Listener _onresume = new Listener() {
+		@Override
+		public void call(Object... args) {
+			String streamId = args.length > 0 ? (String) args[0] : null;
+			long received = args.length > 1 && args[1] instanceof Number ? ((Number) args[1]).longValue() : 0;
+			boolean ended = args.length > 2 && Boolean.TRUE.equals(args[2]);
+			if (streamId == null) {
+				return;
+			}
+			if (awaitingResume.remove(streamId) && awaitingResume.isEmpty()) {
+				cancelResumeTimeout();
+			}
+			IOStream stream = streams.get(streamId);
+			if (stream != null) {
+				stream._onresume();
+				// those go out without waiting for a "-read".
+				stream._onresent(scheduler.resume(streamId, received, ended));
+			} else {
+				_error(streamId, new SocketError("invalid stream id"));
+			}
+		}
+	};
+	
+	private void abort() {
+		suspended = false;
+		awaitingResume.clear();
+		cancelResumeTimeout();
+		scheduler.clear();
+		Iterator<Entry<String, IOStream>> iter = streams.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			abort((IOStream) entry.getValue());
+		}
+	}
+	
+	private void abort(IOStream stream) {
+		stream.destroy();
+		// Close streams when the underlaying
+		// socket.io connection is closed (regardless why)
+		stream.emit("close");
+		stream.emit("error", new Error("Connection aborted"));
+	}
+	
 	@Override
 	public Emitter emit(String event, Object... args) {
 		for (int i = 0; i < exportEvents.length; i++) {
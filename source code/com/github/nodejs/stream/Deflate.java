@@ -0,0 +1,77 @@
+package com.github.nodejs.stream;
+
+import java.util.zip.Deflater;
+
+import com.github.nkzawa.socketio.client.Ack;
+import com.github.nodejs.lib.Zlib;
+import com.github.nodejs.vo.Buffer;
+import com.github.nodejs.vo.ReadableChunk;
+import com.github.nodejs.vo.StreamOptions;
+
+/**
+ * zlib compressing Transform, like node's zlib.createDeflate():
+ * reader.pipe(deflate.writeStream, null); deflate.pipe(stream.writeStream, null);
+ */
+public class Deflate extends Transform {
+
+	private final Deflater deflater;
+	private boolean ended = false;
+
+	public Deflate() {
+		this(new StreamOptions());
+	}
+
+	public Deflate(StreamOptions options) {
+		super(options);
+		int level = options != null ? options.compressionLevel : Deflater.DEFAULT_COMPRESSION;
+		deflater = new Deflater(level);
+		readStream.on("error", onclose);
+		writeStream.on("error", onclose);
+		readStream.on("close", onclose);
+		writeStream.on("close", onclose);
+	}
+
+	@Override
+	protected void _transform(ReadableChunk chunk, String encoding, Ack cb) {
+		if (ended) {
+			cb.call(new Error("deflate already ended"));
+			return;
+		}
+		Buffer out = Zlib.deflate(deflater, chunk.bytes, Deflater.NO_FLUSH);
+		if (out.length() > 0) {
+			push(out);
+		}
+		out.release();
+		cb.call();
+	}
+
+	@Override
+	protected void _flush(Ack cb) {
+		if (ended) {
+			cb.call();
+			return;
+		}
+		Buffer out = Zlib.finish(deflater);
+		end();
+		if (out.length() > 0) {
+			push(out);
+		}
+		out.release();
+		cb.call();
+	}
+	
+	// an errored or closed stream won't flush, the native memory goes anyway.
+	private Listener onclose = new Listener() {
+		@Override
+		public void call(Object... args) {
+			end();
+		}
+	};
+	
+	private void end() {
+		if (!ended) {
+			ended = true;
+			deflater.end();
+		}
+	}
+}
@@ -6,26 +6,53 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.NumberFormat;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.github.nkzawa.emitter.Emitter.Listener;
+import com.github.nkzawa.thread.EventThread;
+import com.github.nodejs.vo.Buffer;
 import com.github.nodejs.vo.StreamOptions;
 
 public class FileIO {
 
 	public String path;
-	public int start = -1;
-	public int end = -1;
+	// byte range to read, end is inclusive like in node's fs.createReadStream.
+	public long start = -1;
+	public long end = -1;
 	public boolean autoClose = true;
-	public int pos = 0;
+	public long pos = 0;
 	public boolean destroyed = false;
 	public boolean opened = false;
 	public boolean closed = false;
 	private long fileSize = 0;
+	// read through mappings of the file instead of the InputStream.
+	public boolean memoryMapped = false;
+	private static final long MAP_WINDOW = 32 * 1024 * 1024;
+	private static final int PAGE_SIZE = 4096;
+	private MappedByteBuffer window = null;
+	private long windowStart = 0;
 	
 	
 	InputStream inputStream;
 	FileOutputStream outputStream;
+	// positional writes go through this one, appending ones too when open.
+	RandomAccessFile outputFile;
+	FileChannel outputChannel;
+	
+	// threads doing the disk I/O of all files, so that a slow disk doesn't
+	// hold up the EventThread.
+	public static int ioThreads = 2;
+	private static ExecutorService ioService;
+	// tasks of this file, run one at a time and in order.
+	private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+	private boolean running = false;
 	
 	public FileIO() {
 		// TODO Auto-generated constructor stub
@@ -53,12 +80,35 @@ public class FileIO {
 	}
 	
 	public void openOutputStream(String filePath, Listener cb) {
+		openOutputStream(filePath, "a", 0, cb);
+	}
+	
+	/**
+	 * @param flags like node's fs.open: "a" appends, "r+" writes at explicit
+	 * offsets into the file as it is and "w" does so into an emptied file.
+	 * @param preallocate size the file is grown to before writing, 0 for none.
+	 */
+	public void openOutputStream(String filePath, String flags, long preallocate, Listener cb) {
 		try {
 			File newFile = new File(filePath);
 			if (!newFile.exists()) {
 				newFile.createNewFile();
 			}
-			outputStream = new FileOutputStream(newFile, true);
+			if ("a".equals(flags)) {
+				outputStream = new FileOutputStream(newFile, true);
+				outputChannel = outputStream.getChannel();
+			} else {
+				outputFile = new RandomAccessFile(newFile, "rw");
+				outputChannel = outputFile.getChannel();
+				if ("w".equals(flags)) {
+					outputFile.setLength(0);
+				}
+				// reserves the whole extent up front, so that chunks written
+				// out of order don't fragment the file.
+				if (preallocate > outputFile.length()) {
+					outputFile.setLength(preallocate);
+				}
+			}
 			cb.call();
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
@@ -68,6 +118,7 @@ public class FileIO {
 	}
 	
 	public void closeInputStream() {
+		window = null;
 		try {
 			inputStream.close();
 		} catch (IOException e) {
@@ -78,6 +129,10 @@ public class FileIO {
 	
 	public void closeOutputStream() {
 		try {
+			if (outputFile != null) {
+				outputFile.close();
+				return;
+			}
 			outputStream.close();
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
@@ -85,22 +140,153 @@ public class FileIO {
 		}
 	}
 
+	private static synchronized ExecutorService ioService() {
+		if (ioService == null) {
+			ioService = Executors.newFixedThreadPool(ioThreads, new ThreadFactory() {
+				private int count = 0;
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "FileIO-" + (++count));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return ioService;
+	}
+	
+	// Runs task on the I/O threads, after whatever this file queued before.
+	private void submit(Runnable task) {
+		synchronized (tasks) {
+			tasks.add(task);
+			if (running) {
+				return;
+			}
+			running = true;
+		}
+		ioService().execute(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					Runnable next;
+					synchronized (tasks) {
+						next = tasks.poll();
+						if (next == null) {
+							running = false;
+							return;
+						}
+					}
+					next.run();
+				}
+			}
+		});
+	}
+	
+	// Runs a blocking task on the I/O threads, in no particular order.
+	public static void execute(Runnable task) {
+		ioService().execute(task);
+	}
+	
+	// Hands the results of an I/O task back to the loop it came from.
+	private static Listener onEventThread(final Listener cb) {
+		final EventThread.Loop loop = EventThread.loop();
+		return new Listener() {
+			@Override
+			public void call(final Object... args) {
+				loop.exec(new Runnable() {
+					@Override
+					public void run() {
+						cb.call(args);
+					}
+				});
+			}
+		};
+	}
+	
+	//Same as readFromStream, off the calling thread. cb runs in EventThread.
+	public void readAsync(final byte[] target, final int targetStart,
+			final int len, final long srcStart, Listener cb) {
+		final Listener done = onEventThread(cb);
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				readFromStream(target, targetStart, len, srcStart, done);
+			}
+		});
+	}
+	
+	//Same as writeToStream, off the calling thread. cb runs in EventThread.
+	public void writeAsync(final Buffer src, final long position, Listener cb) {
+		final Listener done = onEventThread(cb);
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				writeToStream(src, position, done);
+			}
+		});
+	}
+	
+	//Same as readMapped, off the calling thread. cb runs in EventThread.
+	public void readMappedAsync(final int len, final long srcStart, Listener cb) {
+		final Listener done = onEventThread(cb);
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				readMapped(len, srcStart, done);
+			}
+		});
+	}
+	
+	//Forces what was written so far to the disk, cb runs in EventThread.
+	public void syncAsync(Listener cb) {
+		final Listener done = onEventThread(cb);
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					outputChannel.force(false);
+					done.call();
+				} catch (IOException e) {
+					done.call(new Error(e.getMessage()));
+				}
+			}
+		});
+	}
+	
+	//Closes the files once the I/O queued before is done, cb runs in EventThread.
+	public void closeAsync(Listener cb) {
+		final Listener done = onEventThread(cb);
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				if (inputStream != null) {
+					closeInputStream();
+				}
+				if (outputChannel != null) {
+					closeOutputStream();
+				}
+				done.call();
+			}
+		});
+	}
+
 	// fs.read(this.fd, pool, pool.used, toRead, this.pos, onread);
+	// Positional read, the stream's own position is never used.
 	public void readFromStream(byte[] target,
-			int targetStart, int len, int srcStart, Listener cb) {
+			int targetStart, int len, long srcStart, Listener cb) {
 		try {
-			long left = fileSize - srcStart;
-			long bytesRead = (left < len) ? left : len;
-//			inputStream.skip(srcStart);
-			if (left > 0) {
-				float percent = (float) (srcStart + bytesRead) / (float) fileSize;
-				NumberFormat format = NumberFormat.getPercentInstance();
-				format.setMaximumFractionDigits(2);
-				inputStream.read(target, targetStart, (int) bytesRead);
-				cb.call(null, (int) bytesRead);
-			} else {
-				cb.call(null, 0);
+			FileChannel channel = ((FileInputStream) inputStream).getChannel();
+			ByteBuffer dst = ByteBuffer.wrap(target, targetStart, len);
+			int bytesRead = 0;
+			while (dst.hasRemaining()) {
+				int n = channel.read(dst, srcStart + bytesRead);
+				if (n < 0) {
+					break;
+				}
+				bytesRead += n;
 			}
+			cb.call(null, bytesRead);
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -108,6 +294,74 @@ public class FileIO {
 		}
 	}
 
+	/**
+	 * Memory mapped counterpart of readFromStream, calls back with a Buffer
+	 * viewing up to len bytes of the file from srcStart on, or null at EOF.
+	 * The file is mapped MAP_WINDOW bytes at a time and views share a window.
+	 */
+	public void readMapped(int len, long srcStart, Listener cb) {
+		try {
+			int bytesRead = (int) Math.min(fileSize - srcStart, len);
+			if (bytesRead <= 0) {
+				cb.call(null, null);
+				return;
+			}
+			if (window == null || srcStart < windowStart
+					|| srcStart + bytesRead > windowStart + window.capacity()) {
+				long size = Math.min(Math.max(MAP_WINDOW, bytesRead), fileSize - srcStart);
+				FileChannel channel = ((FileInputStream) inputStream).getChannel();
+				window = channel.map(FileChannel.MapMode.READ_ONLY, srcStart, size);
+				windowStart = srcStart;
+			}
+			ByteBuffer view = window.duplicate();
+			int start = (int) (srcStart - windowStart);
+			view.limit(start + bytesRead);
+			view.position(start);
+			// faults the pages in here, not wherever the bytes get copied.
+			for (int i = start; i < start + bytesRead; i += PAGE_SIZE) {
+				view.get(i);
+			}
+			cb.call(null, new Buffer(view));
+		} catch (IOException e) {
+			cb.call(new Error(e.getMessage()));
+		}
+	}
+
+	public void writeToStream(Buffer src, Listener cb) {
+		if (src.contents != null) {
+			writeToStream(src.contents, src.offset, src.length(), cb);
+			return;
+		}
+		try {
+			ByteBuffer bytes = src.toByteBuffer();
+			FileChannel channel = outputStream.getChannel();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			cb.call(null, src.length());
+		} catch (IOException e) {
+			cb.call(new Error(e.getMessage()));
+		}
+	}
+
+	// Writes src at position of the file, or appends it when position < 0.
+	public void writeToStream(Buffer src, long position, Listener cb) {
+		if (position < 0) {
+			writeToStream(src, cb);
+			return;
+		}
+		try {
+			ByteBuffer bytes = src.toByteBuffer();
+			int written = 0;
+			while (bytes.hasRemaining()) {
+				written += outputChannel.write(bytes, position + written);
+			}
+			cb.call(null, written);
+		} catch (IOException e) {
+			cb.call(new Error(e.getMessage()));
+		}
+	}
+
 	public void writeToStream(byte[] src, int srcStart,
 			int len, Listener cb) {
 		try {
@@ -158,6 +412,20 @@ public class FileIO {
         return 0;
     }
 
+	// Cuts the file down to size, if it's any longer.
+	public static boolean truncate(String path, long size) {
+		try {
+			RandomAccessFile f = new RandomAccessFile(path, "rw");
+			if (f.length() > size) {
+				f.setLength(size);
+			}
+			f.close();
+			return true;
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
 	public static void remove(String path, Listener cb) {
 		File f = new File(path);
 		if (f.exists()) {
@@ -4,6 +4,7 @@ import android.util.Log;
 
 import com.github.nkzawa.thread.EventThread;
 import com.github.nodejs.vo.Buffer;
+import com.github.nodejs.vo.BufferPool;
 import com.github.nodejs.vo.ReadableChunk;
 import com.github.nodejs.vo.StreamOptions;
 
@@ -12,12 +13,31 @@ public class FileReadStream extends Readable {
 	private FileIO fileIO;
 	Buffer pool = null;
 	private final int kMinPoolSpace = 128;
+	// the disk read in flight, issued ahead of _read when possible so that
+	// the next chunk is already loaded once it's asked for.
+	private boolean reading = false;
+	// _read was called and waits for that read.
+	private boolean wanted = false;
+	private int lastSize = 0;
+	// result of the read, until it's pushed.
+	private ReadableChunk ready = null;
+	private Error readError = null;
+	// pool region the read went to, referenced until it's pushed.
+	private Buffer readyPool = null;
 	
 	private void allocNewPool(int size) {
-		pool = new Buffer(size);
+		pool = BufferPool.acquire(size);
 		pool.used = 0;
 	}
 	
+	// chunks still queued downstream keep their own reference on the pool.
+	private void releasePool() {
+		if (pool != null) {
+			pool.release();
+			pool = null;
+		}
+	}
+	
 	public FileReadStream(String filePath, StreamOptions options) {
 		fileIO = new FileIO();
 		StreamOptions opt = options;
@@ -27,6 +47,14 @@ public class FileReadStream extends Readable {
 		opt.highWaterMark = 64 * 1024;
 		_readableState = new ReadableState(opt);
 		fileIO.path = filePath;
+		fileIO.memoryMapped = opt.memoryMapped;
+		if (opt.start > 0) {
+			fileIO.start = opt.start;
+			fileIO.pos = opt.start;
+		}
+		if (opt.end >= 0) {
+			fileIO.end = opt.end;
+		}
 		if (!fileIO.opened) {
 			open(opt.pictureFormat);
 		}
@@ -58,7 +86,7 @@ public class FileReadStream extends Readable {
 		});
 	}
 
-	private void destroy() {
+	public void destroy() {
 		if (fileIO.destroyed) {
 			return;
 		}
@@ -92,9 +120,16 @@ public class FileReadStream extends Readable {
 	private Listener onclose = new Listener() {
 		@Override
 		public void call(Object... arg0) {
-			fileIO.closeInputStream();
-			emit("close");
 			fileIO.opened = false;
+			// waits for a read still in flight.
+			fileIO.closeAsync(new Listener() {
+				@Override
+				public void call(Object... args) {
+					dropReady();
+					releasePool();
+					emit("close");
+				}
+			});
 		}
 	};
 
@@ -113,42 +148,142 @@ public class FileReadStream extends Readable {
 		if (fileIO.destroyed) {
 			return;
 		}
+		if (fileIO.memoryMapped) {
+			readMapped(n);
+			return;
+		}
+		wanted = true;
+		lastSize = n;
+		if (ready != null || readError != null) {
+			deliver();
+		} else if (!reading) {
+			readAhead(n);
+		}
+	}
+	
+	private void readAhead(int n) {
 		if (pool == null || pool.length() - pool.used < kMinPoolSpace) {
 			// discard the old pool.
-			pool = null;
+			releasePool();
 			allocNewPool(_readableState.highWaterMark);
 		}
 
+		// chunks pushed below are views onto the pool, each read
+		// claims a fresh region of it.
 		final Buffer thisPool = pool;
 		int toRead = Math.min(pool.length() - pool.used, n);
-		// toRead = Math.min(end - pos + 1, toRead);
+		if (fileIO.end >= 0) {
+			toRead = (int) Math.min(fileIO.end - fileIO.pos + 1, toRead);
+		}
 		final int start = pool.used;
 		// already read everything we were supposed to read! treat as EOF.
 		if (toRead <= 0) {
-			push(null, null);
+			if (wanted) {
+				wanted = false;
+				push(null, null);
+			}
 			return;
 		}
-		// the actual read
-		fileIO.readFromStream(pool.contents, pool.used, toRead, fileIO.pos, new Listener() {
+		reading = true;
+		thisPool.retain();
+		// the actual read, on the I/O threads.
+		fileIO.readAsync(pool.contents, pool.used, toRead, fileIO.pos, new Listener() {
 			@Override
 			public void call(Object... args) {
+				reading = false;
+				if (fileIO.destroyed) {
+					thisPool.release();
+					return;
+				}
 				Error err = args.length > 0 ? (Error) args[0] : null;
 				int bytesRead = args.length > 1 ? (int) args[1] : 0;
 				if (err != null) {
-					if (fileIO.autoClose) {
-						destroy();
-					}
-					emit("error", err);
+					thisPool.release();
+					readError = err;
 				} else {
 					Buffer buf = null;
 					if (bytesRead > 0) {
 						buf = thisPool.slice(start, start + bytesRead);
 					}
-					push(new ReadableChunk(buf), null);
+					ready = new ReadableChunk(buf);
+					readyPool = thisPool;
+				}
+				if (wanted) {
+					deliver();
 				}
 			}
 		});
 		fileIO.pos += toRead;
 		pool.used += toRead;
 	}
+	
+	private void deliver() {
+		wanted = false;
+		if (readError != null) {
+			Error err = readError;
+			readError = null;
+			if (fileIO.autoClose) {
+				destroy();
+			}
+			emit("error", err);
+			return;
+		}
+		ReadableChunk chunk = ready;
+		Buffer chunkPool = readyPool;
+		boolean eof = chunk.bytes == null;
+		ready = null;
+		readyPool = null;
+		push(chunk, null);
+		// queued chunks hold their own reference by now.
+		if (chunkPool != null) {
+			chunkPool.release();
+		}
+		// push() may have called _read, which already read ahead.
+		if (!eof && !fileIO.destroyed && !reading && ready == null) {
+			readAhead(lastSize);
+		}
+	}
+	
+	private void dropReady() {
+		ready = null;
+		if (readyPool != null) {
+			readyPool.release();
+			readyPool = null;
+		}
+	}
+	
+	// chunks are views onto the mapped file, no pool and no copy involved.
+	// Mapping and faulting the pages in happen on the I/O threads.
+	private void readMapped(int n) {
+		int toRead = n;
+		if (fileIO.end >= 0) {
+			toRead = (int) Math.min(fileIO.end - fileIO.pos + 1, toRead);
+		}
+		// already read everything we were supposed to read! treat as EOF.
+		if (toRead <= 0) {
+			push(null, null);
+			return;
+		}
+		fileIO.readMappedAsync(toRead, fileIO.pos, new Listener() {
+			@Override
+			public void call(Object... args) {
+				if (fileIO.destroyed) {
+					return;
+				}
+				Error err = args.length > 0 ? (Error) args[0] : null;
+				Buffer buf = args.length > 1 ? (Buffer) args[1] : null;
+				if (err != null) {
+					if (fileIO.autoClose) {
+						destroy();
+					}
+					emit("error", err);
+				} else {
+					if (buf != null) {
+						fileIO.pos += buf.length();
+					}
+					push(new ReadableChunk(buf), null);
+				}
+			}
+		});
+	}
 }
@@ -1,9 +1,14 @@
 package com.github.nodejs.stream;
 
+import java.util.Timer;
+import java.util.TimerTask;
+
 import com.github.nkzawa.emitter.Emitter.Listener;
 import com.github.nkzawa.socketio.client.Ack;
 import com.github.nkzawa.thread.EventThread;
 import com.github.nodejs.stream.Writable.WritableState;
+import com.github.nodejs.vo.Buffer;
+import com.github.nodejs.vo.BufferPool;
 import com.github.nodejs.vo.ReadableChunk;
 import com.github.nodejs.vo.StreamOptions;
 
@@ -12,6 +17,25 @@ public class FileWriteStream extends Writable {
 	private int bytesWritten = 0;
 	private FileIO fileIO;
 	
+	// never force writes to the disk, leave it to the OS.
+	public static final int FSYNC_NONE = 0;
+	// force them once before closing.
+	public static final int FSYNC_ON_CLOSE = 1;
+	// force them every time the gathered chunks are written out.
+	public static final int FSYNC_ON_FLUSH = 2;
+	
+	private static final int DEFAULT_WRITE_BUFFER_SIZE = 64 * 1024;
+	private static final long DEFAULT_FLUSH_INTERVAL = 1000;
+	private static final Timer flushTimer = new Timer("FileWriteStream", true);
+	// small chunks are gathered here and written out together.
+	private Buffer pending = null;
+	private int writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+	private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+	private int fsync = FSYNC_NONE;
+	private TimerTask flushTask = null;
+	private String flags = "a";
+	private long preallocate = 0;
+	
 	public FileWriteStream(String filePath, StreamOptions options) {
 		fileIO = new FileIO();
 		StreamOptions opt = options;
@@ -19,6 +43,21 @@ public class FileWriteStream extends Writable {
 			opt = new StreamOptions();
 		}
 		_writableState = new WritableState(opt, this);
+		if (opt.writeBufferSize != 0) {
+			writeBufferSize = opt.writeBufferSize;
+		}
+		if (opt.flushInterval > 0) {
+			flushInterval = opt.flushInterval;
+		}
+		fsync = opt.fsync;
+		if (opt.flags != null) {
+			flags = opt.flags;
+		}
+		preallocate = opt.preallocate;
+		if (!"a".equals(flags)) {
+			// written at explicit offsets from start on.
+			fileIO.pos = opt.start;
+		}
 		fileIO.path = filePath;
 		if (!fileIO.opened) {
 			open();
@@ -28,7 +67,7 @@ public class FileWriteStream extends Writable {
 	}
 	
 	private void open() {
-		fileIO.openOutputStream(fileIO.path, new Listener() {
+		fileIO.openOutputStream(fileIO.path, flags, preallocate, new Listener() {
 			@Override
 			public void call(Object... args) {
 				Error err = args.length > 0 ? (Error) args[0] : null;
@@ -43,7 +82,7 @@ public class FileWriteStream extends Writable {
 		});
 	}
 	
-	private void destroy() {
+	public void destroy() {
 		if (fileIO.destroyed) {
 			return;
 		}
@@ -79,9 +118,30 @@ public class FileWriteStream extends Writable {
 	private Listener doclose = new Listener() {
 		@Override
 		public void call(Object... arg0) {
-			fileIO.closeOutputStream();
-			emit("close");
+			if (!fileIO.destroyed) {
+				flush(null);
+			} else {
+				dropPending();
+			}
 			fileIO.opened = false;
+			if (fsync != FSYNC_NONE && !fileIO.destroyed) {
+				fileIO.syncAsync(new Listener() {
+					@Override
+					public void call(Object... args) {
+						Error err = args.length > 0 ? (Error) args[0] : null;
+						if (err != null) {
+							emit("error", err);
+						}
+					}
+				});
+			}
+			// after the writes still queued.
+			fileIO.closeAsync(new Listener() {
+				@Override
+				public void call(Object... args) {
+					emit("close");
+				}
+			});
 		}
 	};
 	@Override
@@ -93,21 +153,130 @@ public class FileWriteStream extends Writable {
 					_write(chunk, encoding, cb);
 				}
 			});
+			return;
+		}
+		final int len = chunk.length();
+		if (writeBufferSize < 0 || len >= writeBufferSize) {
+			// big enough on its own, keep the order with what was gathered.
+			flush(null);
+			writeOut(chunk.bytes, null, cb);
+			return;
+		}
+		Buffer full = null;
+		if (pending != null && pending.used + len > writeBufferSize) {
+			// written out below, this chunk starts the next buffer.
+			full = pending;
+			pending = null;
+		}
+		if (pending == null) {
+			pending = BufferPool.acquire(writeBufferSize);
+			pending.used = 0;
+		}
+		chunk.bytes.copy(pending, pending.used, 0, len);
+		pending.used += len;
+		if (full != null) {
+			// hold the writer back until the full buffer is on disk.
+			writeOut(full.slice(0, full.used), full, cb);
+		} else if (pending.used == writeBufferSize) {
+			flush(cb);
+			return;
+		}
+		if (flushTask == null) {
+			final EventThread.Loop loop = EventThread.loop();
+			flushTask = new TimerTask() {
+				@Override
+				public void run() {
+					final TimerTask task = this;
+					loop.exec(new Runnable() {
+						@Override
+						public void run() {
+							// flushed and maybe rescheduled since.
+							if (flushTask != task) {
+								return;
+							}
+							flushTask = null;
+							flush(null);
+						}
+					});
+				}
+			};
+			flushTimer.schedule(flushTask, flushInterval);
+		}
+		if (full == null) {
+			cb.call();
+		}
+	}
+	
+	// Writes out the gathered chunks, cb runs once that's done.
+	private void flush(Ack cb) {
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+		if (pending == null || pending.used == 0 || !fileIO.opened) {
+			if (cb != null) {
+				cb.call();
+			}
+			return;
+		}
+		Buffer buf = pending;
+		pending = null;
+		writeOut(buf.slice(0, buf.used), buf, cb);
+	}
+	
+	// the chunk, or the gathered ones, stay referenced until cb.
+	private void writeOut(Buffer bytes, final Buffer owned, final Ack cb) {
+		long position = -1;
+		if (!"a".equals(flags)) {
+			position = fileIO.pos;
+			fileIO.pos += bytes.length();
 		}
-		fileIO.writeToStream(chunk.bytes.contents, 0, chunk.length(), new Listener() {
+		fileIO.writeAsync(bytes, position, new Listener() {
 			@Override
 			public void call(Object... args) {
+				if (owned != null) {
+					owned.release();
+				}
 				Error err = args.length > 0 ? (Error) args[0] : null;
 				int bytes = args.length > 1 ? (int) args[1] : 0;
 				if (err != null) {
 					destroy();
-					cb.call(err);
+					if (cb != null) {
+						cb.call(err);
+					} else {
+						// the writes it came from were already acknowledged.
+						emit("error", err);
+					}
 				} else {
 					bytesWritten += bytes;
-					cb.call();
+					if (cb != null) {
+						cb.call();
+					}
 				}
 			}
 		});
+		if (fsync == FSYNC_ON_FLUSH) {
+			fileIO.syncAsync(new Listener() {
+				@Override
+				public void call(Object... args) {
+					Error err = args.length > 0 ? (Error) args[0] : null;
+					if (err != null) {
+						emit("error", err);
+					}
+				}
+			});
+		}
+	}
+	
+	private void dropPending() {
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+		if (pending != null) {
+			pending.release();
+			pending = null;
+		}
 	}
 
 }
@@ -1,6 +1,9 @@
 package com.github.nodejs.stream;
 
 import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import android.util.Log;
 
@@ -17,8 +20,39 @@ public class IOStream extends Duplex {
 	public ArrayList<ReadReq> pushBuffer = new ArrayList<ReadReq>();
 	public ArrayList<WriteReq> writeBuffer = new ArrayList<WriteReq>();
 	private boolean _readable = false;
-	private boolean _writable = false;
+	// "-read" requests received from the remote stream and not yet answered.
+	private int writeCredits = 0;
+	// "-read" requests sent to the remote stream and not yet answered.
+	private int pendingReads = 0;
+	private int readAhead = DEFAULT_READ_AHEAD;
+	private static final int DEFAULT_READ_AHEAD = 4;
+	// bytes written to the remote stream and not yet acked.
+	private int inflightBytes = 0;
+	private int writeWindow = DEFAULT_WRITE_WINDOW;
+	private static final int DEFAULT_WRITE_WINDOW = 64 * 1024;
+	private static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024;
+	// write callback held back until acks bring us under writeWindow.
+	private Ack pendingWriteCb = null;
 	public boolean destroyed = false;
+	// capabilities the remote reader advertised with its last "-read".
+	public int peerCapabilities = 0;
+	// chunks received from the remote stream, and whether it ended, so that
+	// a resumed connection carries on from there.
+	public long framesReceived = 0;
+	public boolean remoteEnded = false;
+	private int lastReadSize = 0;
+	// CRC32 over the checksums of the chunks sent and received so far,
+	// see StreamSocket.CAP_CHECKSUM.
+	public CRC32 sentDigest = new CRC32();
+	public CRC32 receivedDigest = new CRC32();
+	// zlib level chunks are sent with when the remote reader takes
+	// StreamSocket.CAP_DEFLATE, 0 sends them as they are.
+	public int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	// one zlib stream per direction, flushed at every chunk.
+	public Deflater deflater = null;
+	public Inflater inflater = null;
+	// weight of this stream in StreamSocket's scheduler.
+	public int priority = 1;
 	// default to *not* allowing half open sockets
 	public boolean allowHalfOpen = false;
 	
@@ -28,6 +62,16 @@ public class IOStream extends Duplex {
 	public IOStream(StreamOptions option) {
 		if (option != null) {
 			allowHalfOpen = option.allowHalfOpen;
+			if (option.readAhead > 0) {
+				readAhead = option.readAhead;
+			}
+			if (option.writeWindow > 0) {
+				writeWindow = option.writeWindow;
+			}
+			if (option.priority > 0) {
+				priority = option.priority;
+			}
+			compressionLevel = option.compressionLevel;
 		}
 		initDuplex(option);
 		writeStream.on("finish", _onfinish);
@@ -36,7 +80,7 @@ public class IOStream extends Duplex {
 		readStream.on("error", _onerror);
 	}
 	
-	private void initDuplex(StreamOptions option) {
+	private void initDuplex(final StreamOptions option) {
 		setRead(new Readable(option) {
 			
 			//Local read
@@ -57,19 +101,32 @@ public class IOStream extends Duplex {
 							break;
 						}
 					}
-					return;
+				} else {
+					_readable = true;
 				}
-				_readable = true;
 				// Go get data from remote stream
 				// Calls
 				// ._onread remotely
 				// then
 				// ._onwrite locally
-				socket._read(id, size);
+				requestMore(size);
 			}
 		});
 		
 		setWrite(new Writable(option) {
+			{
+				// a backlog of chunks goes out as a single "-write".
+				_writev = true;
+				if (option == null || option.maxFrameSize <= 0) {
+					_writableState.writevMaxLength = DEFAULT_MAX_FRAME_SIZE;
+				}
+			}
+			
+			@Override
+			public void _writev(ReadableChunk chunk, Ack cb) {
+				_write(chunk, "buffer", cb);
+			}
+			
 			//Write local data to remote stream
 			@Override
 			public void _write(ReadableChunk chunk, String encoding, Ack cb) {
@@ -77,7 +134,8 @@ public class IOStream extends Duplex {
 					return;
 				}
 				WriteReq req = new WriteReq(chunk, encoding, cb);
-				if (_writable) {
+				if (writeCredits > 0) {
+					writeCredits--;
 					req.write();
 				} else {
 					writeBuffer.add(req);
@@ -86,17 +144,54 @@ public class IOStream extends Duplex {
 		});
 	}
 	
+	// Grants the remote stream credit for one more chunk at a time, keeping
+	// up to readAhead requests in flight so that several chunks can be on the
+	// wire at once. Chunks parked in pushBuffer count against the window.
+	private void requestMore(int size) {
+		lastReadSize = size;
+		while (socket != null && pendingReads + pushBuffer.size() < readAhead) {
+			pendingReads++;
+			socket._read(id, size);
+		}
+	}
+	
+	// The connection came back, "-read"s sent on the old one are lost.
+	public void _onreconnect() {
+		pendingReads = 0;
+		if (!remoteEnded && lastReadSize > 0) {
+			requestMore(lastReadSize);
+		}
+	}
+	
+	// The remote stream resumed, the "-read"s it sent before are lost.
+	public void _onresume() {
+		writeCredits = 0;
+	}
+	
+	// Chunks sent again after a resume take the place of as many of the
+	// "-read"s the remote stream requests anew.
+	public void _onresent(int chunks) {
+		writeCredits -= chunks;
+	}
+	
 	//Read from remote stream
 	public Listener _onread = new Listener() {
 		
 		@Override
 		public void call(Object... arg0) {
+			if (writeCredits < 0) {
+				// granted to a chunk sent again, see _onresent.
+				writeCredits++;
+				return;
+			}
 			if (writeBuffer.size() > 0) {
 				WriteReq writeReq = writeBuffer.remove(0);
 				if (writeReq != null) {
 					writeReq.write();
 				}
-//				_writable = true;
+			} else {
+				// nothing to write yet, keep the credit for the next chunk.
+				writeCredits++;
 			}
 		}
 	};
@@ -109,6 +204,9 @@ public class IOStream extends Duplex {
 			ReadableChunk chunk = args.length > 0 ? (ReadableChunk) args[0] : null;
 			String encoding = args.length > 1 ? (String) args[1] : null;
 			Ack cb = args.length > 2 ? (Ack) args[2] : null;
+			if (pendingReads > 0) {
+				pendingReads--;
+			}
 			ReadReq readReq = new ReadReq(chunk, encoding, cb);
 			if (_readable) {
 				readReq.push();
@@ -196,11 +294,26 @@ public class IOStream extends Duplex {
 		}
 	};
 	
+	// Data from the remote stream is corrupt: tell both ends and give up.
+	public void _fail(SocketError err) {
+		if (socket != null) {
+			socket._error(id, err);
+		}
+		destroy();
+		emit("error", err);
+	}
+	
 	public void destroy() {
 		if (destroyed) {
 			return;
 		}
 		readStream.readable = writeStream.writable = false;
+		if (deflater != null) {
+			deflater.end();
+		}
+		if (inflater != null) {
+			inflater.end();
+		}
 		if (socket != null) {
 			socket.cleanup(id);
 			socket = null;
@@ -223,9 +336,30 @@ public class IOStream extends Duplex {
 			if (destroyed) {
 				return;
 			}
-			_writable = false;
-			socket._write(id, chunk, cb);
-			_writable = true;
+			final int len = chunk.length();
+			inflightBytes += len;
+			socket._write(id, chunk, new Ack() {
+				@Override
+				public void call(Object... args) {
+					onack(len);
+				}
+			});
+			// let the next chunk go out straight away while the window allows,
+			// the remote stream still has to grant a "-read" for each one.
+			if (inflightBytes < writeWindow) {
+				cb.call();
+			} else {
+				pendingWriteCb = cb;
+			}
+		}
+	}
+	
+	private void onack(int len) {
+		inflightBytes -= len;
+		if (pendingWriteCb != null && inflightBytes < writeWindow) {
+			Ack cb = pendingWriteCb;
+			pendingWriteCb = null;
+			cb.call();
 		}
 	}
 	
@@ -235,7 +369,8 @@ public class IOStream extends Duplex {
 		public Ack cb;
 		
 		public ReadReq(ReadableChunk data, String charset, Ack callback) {
-			chunk = data;
+			// pooled chunks may wait in pushBuffer.
+			chunk = data != null ? data.retain() : null;
 			encoding = charset;
 			cb = callback;
 		}
@@ -244,6 +379,9 @@ public class IOStream extends Duplex {
 			_readable = false;
 			boolean ret = readStream.push(ReadableChunk.isEmpty(chunk) ? 
 					new ReadableChunk("") : chunk, encoding);
+			if (chunk != null) {
+				chunk.release();
+			}
 			cb.call();
 			return ret;
 		}
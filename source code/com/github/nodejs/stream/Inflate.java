@@ -0,0 +1,77 @@
+package com.github.nodejs.stream;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.github.nkzawa.socketio.client.Ack;
+import com.github.nodejs.lib.Zlib;
+import com.github.nodejs.vo.Buffer;
+import com.github.nodejs.vo.ReadableChunk;
+import com.github.nodejs.vo.StreamOptions;
+
+/**
+ * Undoes Deflate, like node's zlib.createInflate().
+ */
+public class Inflate extends Transform {
+
+	private final Inflater inflater = new Inflater();
+	private boolean ended = false;
+
+	public Inflate() {
+		this(new StreamOptions());
+	}
+
+	public Inflate(StreamOptions options) {
+		super(options);
+		readStream.on("error", onclose);
+		writeStream.on("error", onclose);
+		readStream.on("close", onclose);
+		writeStream.on("close", onclose);
+	}
+
+	@Override
+	protected void _transform(ReadableChunk chunk, String encoding, Ack cb) {
+		if (ended) {
+			cb.call(new Error("inflate already ended"));
+			return;
+		}
+		try {
+			Buffer out = Zlib.inflate(inflater, chunk.bytes);
+			if (out.length() > 0) {
+				push(out);
+			}
+			out.release();
+			cb.call();
+		} catch (DataFormatException e) {
+			end();
+			cb.call(new Error(e.getMessage()));
+		}
+	}
+
+	@Override
+	protected void _flush(Ack cb) {
+		// the input stopped short of the end of the deflate stream.
+		boolean truncated = ended || !inflater.finished();
+		end();
+		if (truncated) {
+			cb.call(new Error("unexpected end of file"));
+			return;
+		}
+		cb.call();
+	}
+	
+	// an errored or closed stream won't flush, the native memory goes anyway.
+	private Listener onclose = new Listener() {
+		@Override
+		public void call(Object... args) {
+			end();
+		}
+	};
+	
+	private void end() {
+		if (!ended) {
+			ended = true;
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.github.nodejs.stream;
+
+import com.github.nkzawa.socketio.client.Ack;
+import com.github.nodejs.vo.ReadableChunk;
+import com.github.nodejs.vo.StreamOptions;
+
+/**
+ * Ported from node's PassThrough: a Transform handing every chunk on as it
+ * is, without copying it. Handy to tap into a pipe, e.g. to count or hash
+ * what goes by with a "data" listener.
+ */
+public class PassThrough extends Transform {
+
+	public PassThrough() {
+		this(new StreamOptions());
+	}
+
+	public PassThrough(StreamOptions options) {
+		super(options);
+	}
+
+	@Override
+	protected void _transform(ReadableChunk chunk, String encoding, Ack cb) {
+		cb.call(null, chunk);
+	}
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 
 import com.github.nkzawa.emitter.Emitter;
 import com.github.nkzawa.thread.EventThread;
+import com.github.nodejs.lib.BufferList;
 import com.github.nodejs.lib.StringDecoder;
 import com.github.nodejs.vo.Buffer;
 import com.github.nodejs.vo.ReadableChunk;
@@ -27,10 +28,6 @@ public abstract class Readable extends Emitter implements IPipable {
 		return _readableState;
 	}
 	
-	public int listenerCount(String eventType) {
-		return listeners(eventType).size();
-	}
-	
 	@Override
 	public Emitter on(String event, Listener fn) {
 		Emitter ret = super.on(event, fn);
@@ -86,7 +83,7 @@ public abstract class Readable extends Emitter implements IPipable {
 		}
 		if (sizeUnknown) {
 			if (state.isFlowing() && state.buffer.size() > 0) {
-				return state.buffer.get(0).length();
+				return state.buffer.headLength();
 			} else {
 				return state.length;
 			}
@@ -117,7 +114,7 @@ public abstract class Readable extends Emitter implements IPipable {
 		if (state.decoder != null && !state.ended) {
 			String chunk = state.decoder.end();
 			if (chunk != null && chunk.length() > 0) {
-				state.buffer.add(new ReadableChunk(chunk));
+				state.buffer.push(new ReadableChunk(chunk));
 				state.length += state.objectMode ? 1 : chunk.length();
 			}
 		}
@@ -151,10 +148,11 @@ public abstract class Readable extends Emitter implements IPipable {
 					} else {
 						// update the buffer info.
 						state.length += state.objectMode ? 1 : chunk.length();
+						// the buffer keeps its own reference on pooled chunks.
 						if (addToFront) {
-							state.buffer.add(0, chunk);
+							state.buffer.unshift(chunk.retain());
 						} else {
-							state.buffer.add(chunk);
+							state.buffer.push(chunk.retain());
 						}
 						
 						if (state.needReadable) {
@@ -230,7 +228,7 @@ public abstract class Readable extends Emitter implements IPipable {
 	
 	//Pluck off n bytes from an array of buffers. Length is the combined lengths of all the buffers in the list.
 	private ReadableChunk fromList(int n, ReadableState state) {
-		ArrayList<ReadableChunk> list = state.buffer;
+		BufferList list = state.buffer;
 		int length = state.length;
 		boolean stringMode = state.decoder == null ? false : true;
 		boolean objectMode = state.objectMode;
@@ -243,51 +241,13 @@ public abstract class Readable extends Emitter implements IPipable {
 		if (length == 0) {
 			return null;
 		} else if (objectMode) {
-			ret = list.remove(0);
+			ret = list.shift();
 		} else if (n == 0 || n >= length) {
-			// read it all, truncate the array.
-			ret = ReadableChunk.concat(list);
-			list.clear();
+			// read it all, truncate the list.
+			ret = list.concat();
 		} else {
 			// read just some of it.
-		    if (n < list.get(0).length()) {
-		    	// just take a part of the first list item. slice is the same for buffers and strings.
-		    	ReadableChunk buf = list.get(0);
-		    	ret = buf.slice(0, n);
-		    	list.set(0, buf.slice(n));
-		    } else if (n == list.get(0).length()) {
-		    	ret = list.remove(0);
-		    } else {
-		    	// complex case.
-		    	// we have enough to cover it, but it spans past the first buffer.
-		    	String retStr = "";
-		    	Buffer retBuf = null;
-		    	if (!stringMode) {
-		    		retBuf = new Buffer(n);
-		    	}
-		    	int c = 0;
-				for (int i = 0, l = list.size(); i < l && c < n; i++) {
-					ReadableChunk buf = list.get(0);
-					int cpy = Math.min(n - c, buf.length());
-
-					if (stringMode) 
-						retStr += buf.slice(0, cpy).chars;
-					else
-						buf.bytes.copy(retBuf, c, 0, cpy);
-
-					if (cpy < buf.length())
-						list.set(0, buf.slice(cpy));
-					else
-						list.remove(0);
-
-					c += cpy;
-				}
-				if (retBuf != null) {
-					ret = new ReadableChunk(retBuf);
-				} else {
-					ret = new ReadableChunk(retStr);
-				}
-		    }
+			ret = list.consume(n, stringMode);
 		}
 		return ret;
 	}
@@ -300,6 +260,10 @@ public abstract class Readable extends Emitter implements IPipable {
 		return read(n, false);
 	}
 	
+	/**
+	 * The returned chunk holds a reference on its pooled array for the caller,
+	 * release() it once done with it.
+	 */
 	public ReadableChunk read(int n, boolean sizeUnknown) {
 		ReadableState state = _readableState;
 		int nOrig = n;
@@ -376,6 +340,7 @@ public abstract class Readable extends Emitter implements IPipable {
 		if (!ReadableChunk.isEmpty(ret)) {
 			this.emit("data", ret);
 		}
+		// fromList handed us the reference the buffer held, it goes to the caller.
 		return ret;
 	}
 	
@@ -427,9 +392,13 @@ public abstract class Readable extends Emitter implements IPipable {
 	private void flow(Readable stream) {
 		ReadableState state = stream.getState();
 		if (state.isFlowing()) {
-			Object chunk = null;
+			ReadableChunk chunk = null;
 			do {
 				chunk = stream.read();
+				if (chunk != null) {
+					// the "data" listeners took what they keep.
+					chunk.release();
+				}
 			} while (chunk != null && state.isFlowing());
 		}
 	}
@@ -577,7 +546,7 @@ public abstract class Readable extends Emitter implements IPipable {
 	
 	public class ReadableState {
 		public int highWaterMark; // control buffer's size
-		public ArrayList<ReadableChunk> buffer = new ArrayList<ReadableChunk>();
+		public BufferList buffer = new BufferList();
 		public int length = 0; // how many buffer used
 		public ArrayList<IPipable> pipes = new ArrayList<IPipable>();
 
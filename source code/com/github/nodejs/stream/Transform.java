@@ -0,0 +1,130 @@
+package com.github.nodejs.stream;
+
+import com.github.nkzawa.socketio.client.Ack;
+import com.github.nodejs.stream.Readable.ReadableState;
+import com.github.nodejs.vo.Buffer;
+import com.github.nodejs.vo.ReadableChunk;
+import com.github.nodejs.vo.StreamOptions;
+
+/**
+ * Ported from node's Transform: a Duplex whose readable side is computed
+ * from what is written to it, one chunk at a time. Write to writeStream
+ * (or pipe into it) and read from readStream (or pipe() it on).
+ * <p>
+ * Implementations override _transform, push() whatever the chunk turns into
+ * and call cb.call(err) once done with it, or cb.call(null, data) to push
+ * data on the way. _flush is called once the writable side finished, before
+ * the readable side ends.
+ * <p>
+ * Strings written to it reach _transform as bytes, so chunk.bytes is always
+ * set outside objectMode. It is a view onto the writer's bytes, held for the
+ * transform until cb is called; pushing it, or a slice of it, copies nothing
+ * as the readable side takes a reference of its own on pooled buffers.
+ */
+public abstract class Transform extends Duplex {
+
+	private ReadableChunk writechunk = null;
+	private String writeencoding = null;
+	private Ack writecb = null;
+	private boolean transforming = false;
+	private boolean needTransform = false;
+
+	public Transform() {
+		this(new StreamOptions());
+	}
+
+	public Transform(StreamOptions options) {
+		setRead(new Readable(options) {
+			@Override
+			protected void _read(int n) {
+				if (writechunk != null && writecb != null && !transforming) {
+					transforming = true;
+					_transform(writechunk, writeencoding, afterTransform);
+				} else {
+					// mark that we need a transform, so that any data that comes
+					// in will get processed, now that we've asked for it.
+					needTransform = true;
+				}
+			}
+		});
+		setWrite(new Writable(options) {
+			{
+				_writableState.decodeStrings = !_writableState.objectMode;
+			}
+			
+			@Override
+			public void _write(ReadableChunk chunk, String encoding, Ack cb) {
+				writecb = cb;
+				writechunk = chunk;
+				writeencoding = encoding;
+				if (!transforming) {
+					ReadableState rs = readStream.getState();
+					if (needTransform || rs.needReadable || rs.length < rs.highWaterMark) {
+						readStream._read(rs.highWaterMark);
+					}
+				}
+			}
+		});
+		writeStream.on("prefinish", new Listener() {
+			@Override
+			public void call(Object... args) {
+				_flush(new Ack() {
+					@Override
+					public void call(Object... args) {
+						Error err = args.length > 0 ? (Error) args[0] : null;
+						if (err != null) {
+							readStream.emit("error", err);
+							return;
+						}
+						readStream.push(null, null);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * @param chunk to be transformed, only valid until cb is called.
+	 * @param encoding
+	 * @param cb call(err) or call(null, data) once done with chunk.
+	 */
+	protected abstract void _transform(ReadableChunk chunk, String encoding, Ack cb);
+
+	//Called after the last chunk was transformed, may push a few more.
+	protected void _flush(Ack cb) {
+		cb.call();
+	}
+
+	public boolean push(ReadableChunk chunk) {
+		return readStream.push(chunk, null);
+	}
+
+	public boolean push(Buffer buf) {
+		return readStream.push(new ReadableChunk(buf), null);
+	}
+
+	private Ack afterTransform = new Ack() {
+		@Override
+		public void call(Object... args) {
+			Error err = args.length > 0 ? (Error) args[0] : null;
+			ReadableChunk data = args.length > 1 ? (ReadableChunk) args[1] : null;
+			transforming = false;
+			Ack cb = writecb;
+			if (cb == null) {
+				readStream.emit("error", new Error("no writecb in Transform class"));
+				return;
+			}
+			writechunk = null;
+			writecb = null;
+			if (data != null) {
+				push(data);
+			}
+			cb.call(err);
+			ReadableState rs = readStream.getState();
+			rs.reading = false;
+			if (rs.needReadable || rs.length < rs.highWaterMark) {
+				readStream._read(rs.highWaterMark);
+			}
+		}
+	};
+}
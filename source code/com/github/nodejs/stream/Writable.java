@@ -14,7 +14,8 @@ import com.github.nodejs.vo.StreamOptions;
 public abstract class Writable extends Emitter implements IPipable {
 
 	public boolean writable = true;
-	private boolean _writev = false;
+	// set by subclasses which implement _writev.
+	protected boolean _writev = false;
 	protected WritableState _writableState;
 
 	public Writable() {}
@@ -126,6 +127,8 @@ public abstract class Writable extends Emitter implements IPipable {
 			String encoding, Ack cb) {
 		WritableState state = stream.getState();
 		chunk = decodeChunk(chunk, encoding);
+		// hold on to pooled chunks until they are written.
+		chunk.retain();
 		// if (util.isBuffer(chunk))
 		// encoding = "buffer";
 		int len = state.objectMode ? 1 : chunk.length();
@@ -155,6 +158,7 @@ public abstract class Writable extends Emitter implements IPipable {
 			ReadableChunk chunk, String encoding, Ack cb) {
 		WritableState state = stream.getState();
 		state.writelen = len;
+		state.writechunk = chunk;
 		state.writecb = cb;
 		state.writing = true;
 		state.sync = true;
@@ -171,30 +175,39 @@ public abstract class Writable extends Emitter implements IPipable {
 		state.bufferProcessing = true;
 		WriteReq entry = state.bufferedRequest;
 
-		if (this._writev && entry != null && entry.next != null) {
-			// Fast case, write everything using _writev()
+		if (this._writev && writevCount(entry) > 1) {
+			// Fast case, write everything that fits in one frame using _writev()
 			ReadableChunk buffer = null;
 			ArrayList<ReadableChunk> bufferLst = new ArrayList<ReadableChunk>();
 			final ArrayList<Ack> cbs = new ArrayList<Ack>();
-			while (entry != null) {
+			int len = 0;
+			for (int i = writevCount(entry); i > 0; i--) {
 				cbs.add(entry.callback);
 				bufferLst.add(entry.chunk);
+				len += entry.chunk.length();
 				entry = entry.next;
 			}
 			buffer = ReadableChunk.concat(bufferLst);
+			// the concatenated copy replaces the references on the originals.
+			for (int i = 0; i < bufferLst.size(); i++) {
+				bufferLst.get(i).release();
+			}
 
 			// count the one we are adding, as well.
 			// TODO(isaacs) clean this up
 			state.pendingcb++;
-			state.lastBufferedRequest = null;
-			doWrite(this, true, state.length, buffer, "", new Ack() {
+			if (entry == null)
+				state.lastBufferedRequest = null;
+			doWrite(this, true, len, buffer, "", new Ack() {
 				@Override
 				public void call(Object... args) {
-					WritableState state = (WritableState) args[0];
-					Error err = (Error) args[1];
+					WritableState state = getState();
+					Error err = args.length > 0 ? (Error) args[0] : null;
 					for (int i = 0; i < cbs.size(); i++) {
 						state.pendingcb--;
-						cbs.get(i).call(err);
+						if (cbs.get(i) != null) {
+							cbs.get(i).call(err);
+						}
 					}
 				}
 			});
@@ -226,6 +239,21 @@ public abstract class Writable extends Emitter implements IPipable {
 		state.bufferProcessing = false;
 	}
 
+	// how many buffered binary chunks, starting at entry, fit in one _writev.
+	private int writevCount(WriteReq entry) {
+		int count = 0;
+		int len = 0;
+		while (entry != null && entry.chunk.bytes != null) {
+			len += entry.chunk.length();
+			if (count > 0 && len > getState().writevMaxLength) {
+				break;
+			}
+			count++;
+			entry = entry.next;
+		}
+		return count;
+	}
+
 	public void cork() {
 		_writableState.corked++;
 	}
@@ -323,6 +351,8 @@ public abstract class Writable extends Emitter implements IPipable {
 		public Ack writecb = null;
 		// the amount that is being written when _write is called.
 		public int writelen = 0;
+		// the chunk being written, released once _write calls back.
+		public ReadableChunk writechunk = null;
 		public WriteReq bufferedRequest = null;
 		public WriteReq lastBufferedRequest = null;
 		// number of pending user-supplied write callbacks
@@ -333,6 +363,8 @@ public abstract class Writable extends Emitter implements IPipable {
 		// emit prefinish if the only thing we're waiting for is _write cbs
 		// This is relevant for synchronous Transform streams
 		public boolean prefinished = false;
+		// upper bound for the chunks coalesced into one _writev call.
+		public int writevMaxLength = Integer.MAX_VALUE;
 
 		public WritableState(StreamOptions options, Writable stream) {
 			objectMode = options.objectMode;
@@ -346,6 +378,9 @@ public abstract class Writable extends Emitter implements IPipable {
 			decodeStrings = !noDecode;
 			defaultEncoding = options.defaultEncoding == null ? "utf8"
 					: options.defaultEncoding;
+			if (options.maxFrameSize > 0) {
+				writevMaxLength = options.maxFrameSize;
+			}
 		}
 
 		public ArrayList<WriteReq> getBuffer() {
@@ -420,6 +455,10 @@ public abstract class Writable extends Emitter implements IPipable {
 		WritableState state = getState();
 		state.writing = false;
 		state.writecb = null;
+		if (state.writechunk != null) {
+			state.writechunk.release();
+			state.writechunk = null;
+		}
 		state.length -= state.writelen;
 		state.writelen = 0;
 	}
@@ -1,16 +1,26 @@
 package com.github.nodejs.vo;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.zip.CRC32;
 
 public class Buffer {
 
+	// null when the buffer is a view onto a (memory mapped) ByteBuffer.
 	public byte[] contents;
+	private ByteBuffer nio = null;
+	// a Buffer may be a view onto part of its backing store, see slice().
+	public int offset = 0;
+	private int length;
 	private String charsetName = "utf8";
 	public int used = 0;
+	// set when the backing array comes from BufferPool, shared with slices.
+	BufferPool.Lease lease = null;
 	
 	public Buffer(int n) {
 		contents = new byte[n];
+		length = n;
 	}
 	
 	public Buffer(String data) {
@@ -18,24 +28,48 @@ public class Buffer {
 	}
 	
 	public Buffer(byte[] bytes, String encoding) {
+		this(bytes, 0, bytes.length, encoding);
+	}
+	
+	/**
+	 * Creates a view which shares bytes[offset, offset + length) with the caller.
+	 */
+	public Buffer(byte[] bytes, int offset, int length, String encoding) {
 		contents = bytes;
+		this.offset = offset;
+		this.length = length;
 		charsetName = encoding;
 	}
 	
+	/**
+	 * Creates a view onto the remaining bytes of a ByteBuffer, e.g. a mapped
+	 * file region, without copying them.
+	 */
+	public Buffer(ByteBuffer bytes) {
+		nio = bytes;
+		offset = bytes.position();
+		length = bytes.remaining();
+	}
+	
 	public Buffer(String data, String encoding) {
 		charsetName = encoding;
 		Charset charset = Charset.forName(charsetName);
 		contents = data.getBytes(charset);
+		length = contents.length;
 	}
 	
 	public int length() {
-		return contents.length;
+		return length;
 	}
 	
 	public static Buffer concat(ArrayList<Buffer> lst) {
 		return concat(lst, -1);
 	}
 	
+	/**
+	 * The result is drawn from BufferPool and owned by the caller, unless lst
+	 * holds a single Buffer which is returned as is.
+	 */
 	public static Buffer concat(ArrayList<Buffer> lst, int len) {
 		if (lst.size() == 0) {
 			return new Buffer(0);
@@ -49,7 +83,7 @@ public class Buffer {
 			}
 		}
 		
-		Buffer retBuffer = new Buffer(len);
+		Buffer retBuffer = BufferPool.acquire(len);
 		int pos = 0;
 		for (int i = 0; i < lst.size(); i++) {
 			Buffer buf = lst.get(i);
@@ -60,7 +94,7 @@ public class Buffer {
 	}
 	
 	public void copy(Buffer targetBuffer, int targetStart) {
-		copy(targetBuffer, targetStart, 0, contents.length);
+		copy(targetBuffer, targetStart, 0, length);
 	}
 	
 	/**
@@ -71,7 +105,14 @@ public class Buffer {
 	 */
 	public void copy(Buffer targetBuffer, int targetStart, int srcStart, int srcEnd) {
 		int len = srcEnd - srcStart;
-		System.arraycopy(contents, srcStart, targetBuffer.contents, targetStart, len);
+		if (nio != null) {
+			ByteBuffer src = nio.duplicate();
+			src.position(offset + srcStart);
+			src.get(targetBuffer.contents, targetBuffer.offset + targetStart, len);
+			return;
+		}
+		System.arraycopy(contents, offset + srcStart, targetBuffer.contents,
+				targetBuffer.offset + targetStart, len);
 	}
 	
 	/**
@@ -83,7 +124,8 @@ public class Buffer {
 	 * var a = [1,2,3,4]; a.slice(1,-3) => [] <br/>
 	 * var a = [1,2,3,4]; a.slice(1,-4) => [] <br/>
 	 * var a = [1,2,3,4]; a.slice(1) => [2, 3, 4] <br/>
-	 * var a = [1,2,3,4]; a.slice(6) => []
+	 * var a = [1,2,3,4]; a.slice(6) => [] <br/>
+	 * Like node's Buffer#slice the result shares memory with this buffer.
 	 */
 	
 	public Buffer slice(int... args) {
@@ -95,8 +137,9 @@ public class Buffer {
 		if (retLen <= 0) {
 			return new Buffer(0);
 		} else {
-			Buffer retBuffer = new Buffer(retLen);
-			copy(retBuffer, 0, start, end);
+			Buffer retBuffer = new Buffer(contents, offset + start, retLen, "utf8");
+			retBuffer.nio = nio;
+			retBuffer.lease = lease;
 			return retBuffer;
 		}
 	}
@@ -145,16 +188,78 @@ public class Buffer {
 	}
 	
 	public byte getByte(int pos) {
-		return contents[pos];
+		if (nio != null) {
+			return nio.get(offset + pos);
+		}
+		return contents[offset + pos];
+	}
+	
+	/**
+	 * @return a ByteBuffer over the same bytes, positioned at the start of
+	 * this buffer and limited to its end.
+	 */
+	public ByteBuffer toByteBuffer() {
+		if (nio != null) {
+			ByteBuffer ret = nio.duplicate();
+			ret.limit(offset + length);
+			ret.position(offset);
+			return ret;
+		}
+		return ByteBuffer.wrap(contents, offset, length);
+	}
+	
+	/**
+	 * @return the bytes of this buffer in an array of their own length, which
+	 * is the backing array itself unless this buffer is a view or pooled.
+	 */
+	public byte[] toBytes() {
+		if (nio == null && offset == 0 && length == contents.length && lease == null) {
+			return contents;
+		}
+		Buffer ret = new Buffer(length);
+		copy(ret, 0);
+		return ret.contents;
+	}
+	
+	//CRC32 of the bytes of this buffer, read where they are.
+	public long crc32() {
+		CRC32 crc = new CRC32();
+		if (nio != null) {
+			crc.update(toByteBuffer());
+		} else {
+			crc.update(contents, offset, length);
+		}
+		return crc.getValue();
+	}
+	
+	/**
+	 * Takes another reference on a pooled backing array, no-op otherwise.
+	 */
+	public Buffer retain() {
+		if (lease != null) {
+			lease.retain();
+		}
+		return this;
 	}
 	
+	/**
+	 * Drops a reference, see BufferPool.
+	 */
+	public void release() {
+		if (lease != null) {
+			lease.release();
+		}
+	}
 	
 	public String toString() {
-		return new String(contents, Charset.forName(charsetName));
+		return toString(charsetName);
 	}
 	
 	public String toString(String charsetName) {
-		return new String(contents, Charset.forName(charsetName));
+		if (nio != null) {
+			return new String(toBytes(), Charset.forName(charsetName));
+		}
+		return new String(contents, offset, length, Charset.forName(charsetName));
 	}
 	
 	public String toString(String encoding, int start, int end) {
@@ -0,0 +1,133 @@
+package com.github.nodejs.vo;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles the byte arrays behind stream chunks, in power-of-two size classes
+ * from 64 bytes up to 1 MB.
+ * <p>
+ * A pooled Buffer holds one reference when acquired. Its array goes back to
+ * the pool once every {@link Buffer#retain()} on it, or on any slice of it,
+ * has been matched by a {@link Buffer#release()}; a buffer which is never
+ * released is just left to the GC. Readable and Writable hold a reference for
+ * as long as they keep a chunk, so a chunk handed to a 'data' listener is only
+ * guaranteed until the listener returns. Retain it to keep it longer.
+ */
+public class BufferPool {
+
+	private static final int MIN_SHIFT = 6;
+	private static final int MAX_SHIFT = 20;
+	private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+
+	public static boolean enabled = true;
+	// how many free arrays each size class keeps around.
+	public static int maxFreePerClass = 8;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static final ConcurrentLinkedQueue<byte[]>[] free = new ConcurrentLinkedQueue[CLASSES];
+	private static final AtomicInteger[] freeCount = new AtomicInteger[CLASSES];
+	static {
+		for (int i = 0; i < CLASSES; i++) {
+			free[i] = new ConcurrentLinkedQueue<byte[]>();
+			freeCount[i] = new AtomicInteger();
+		}
+	}
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong outstandingBytes = new AtomicLong();
+
+	private BufferPool() {}
+
+	/**
+	 * @param size
+	 * @return a Buffer of exactly size bytes, backed by a pooled array when
+	 * size fits one of the size classes.
+	 */
+	public static Buffer acquire(int size) {
+		if (!enabled || size <= 0 || size > 1 << MAX_SHIFT) {
+			return new Buffer(size);
+		}
+		int cls = sizeClass(size);
+		byte[] bytes = free[cls].poll();
+		if (bytes != null) {
+			freeCount[cls].decrementAndGet();
+			hits.incrementAndGet();
+		} else {
+			bytes = new byte[1 << (cls + MIN_SHIFT)];
+			misses.incrementAndGet();
+		}
+		outstandingBytes.addAndGet(bytes.length);
+		Buffer buf = new Buffer(bytes, 0, size, "utf8");
+		buf.lease = new Lease(bytes, cls);
+		return buf;
+	}
+
+	private static int sizeClass(int size) {
+		int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+		return shift <= MIN_SHIFT ? 0 : shift - MIN_SHIFT;
+	}
+
+	private static void recycle(byte[] bytes, int cls) {
+		outstandingBytes.addAndGet(-bytes.length);
+		if (freeCount[cls].incrementAndGet() <= maxFreePerClass) {
+			free[cls].offer(bytes);
+		} else {
+			freeCount[cls].decrementAndGet();
+		}
+	}
+
+	public static long getHits() {
+		return hits.get();
+	}
+
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	//Bytes handed out by acquire() that haven't been released yet.
+	public static long getOutstandingBytes() {
+		return outstandingBytes.get();
+	}
+
+	/**
+	 * Reference count shared by a pooled Buffer and all of its slices.
+	 */
+	static class Lease {
+		private final byte[] bytes;
+		private final int cls;
+		private final AtomicInteger refs = new AtomicInteger(1);
+
+		Lease(byte[] bytes, int cls) {
+			this.bytes = bytes;
+			this.cls = cls;
+		}
+
+		void retain() {
+			while (true) {
+				int n = refs.get();
+				// never resurrect an array which already went back to the pool.
+				if (n <= 0 || refs.compareAndSet(n, n + 1)) {
+					return;
+				}
+			}
+		}
+
+		void release() {
+			while (true) {
+				int n = refs.get();
+				if (n <= 0) {
+					return;
+				}
+				if (refs.compareAndSet(n, n - 1)) {
+					if (n == 1) {
+						recycle(bytes, cls);
+					}
+					return;
+				}
+			}
+		}
+	}
+}
@@ -35,7 +35,7 @@ public class ReadableChunk {
 		String ret = "";
 		if (lst != null && lst.size() > 0) {
 			for (int i = 0; i < lst.size(); i++) {
-				ReadableChunk item = lst.get(0);
+				ReadableChunk item = lst.get(i);
 				if (item.chars != null) {
 					ret += item.chars;
 				}
@@ -49,7 +49,7 @@ public class ReadableChunk {
 		int len = 0;
 		if (lst != null && lst.size() > 0) {
 			for (int i = 0; i < lst.size(); i++) {
-				ReadableChunk item = lst.get(0);
+				ReadableChunk item = lst.get(i);
 				if (item.bytes != null) {
 					bufLst.add(item.bytes);
 					len += item.bytes.length();
@@ -98,6 +98,19 @@ public class ReadableChunk {
 		return true;
 	}
 	
+	public ReadableChunk retain() {
+		if (bytes != null) {
+			bytes.retain();
+		}
+		return this;
+	}
+	
+	public void release() {
+		if (bytes != null) {
+			bytes.release();
+		}
+	}
+	
 	public String toString(String charset) {
 		if (bytes != null) {
 			return bytes.toString(charset);
@@ -106,7 +119,11 @@ public class ReadableChunk {
 	}
 	
 	public String encodeBytesToBase64Str() {
-		String base64Str = Base64.encodeToString(bytes.contents, Base64.DEFAULT);
+		if (bytes.contents == null) {
+			return Base64.encodeToString(bytes.toBytes(), Base64.DEFAULT);
+		}
+		String base64Str = Base64.encodeToString(bytes.contents, bytes.offset,
+				bytes.length(), Base64.DEFAULT);
 		return base64Str;
 	}
 	
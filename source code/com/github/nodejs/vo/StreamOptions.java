@@ -10,6 +10,35 @@ public class StreamOptions {
 	public boolean decodeStrings;
 	
 	public boolean allowHalfOpen;
+	// how many "-read" requests an IOStream keeps in flight, 0 means the default.
+	public int readAhead;
+	// bytes an IOStream may have written but not yet acked, 0 means the default.
+	public int writeWindow;
+	// upper bound in bytes for chunks coalesced by _writev, 0 means the default.
+	public int maxFrameSize;
+	// share of the connection an IOStream gets next to its siblings, 0 means 1.
+	public int priority;
 	
 	public String pictureFormat;
+	// byte range of a FileReadStream, end is inclusive and -1 means EOF.
+	// Resuming an interrupted transfer is a matter of starting at its offset.
+	// A FileWriteStream not opened with "a" starts writing at start as well.
+	public long start;
+	public long end = -1;
+	// FileReadStream hands out views onto a mapping of the file.
+	public boolean memoryMapped;
+	// bytes a FileWriteStream gathers before writing them out, 0 means the
+	// default and a negative value writes every chunk as it comes.
+	public int writeBufferSize;
+	// ms after which a FileWriteStream writes out what it gathered, 0 means the default.
+	public long flushInterval;
+	// one of FileWriteStream.FSYNC_*.
+	public int fsync;
+	// how a FileWriteStream opens its file, see FileIO.openOutputStream.
+	public String flags = "a";
+	// size a FileWriteStream grows its file to up front, 0 for none.
+	public long preallocate;
+	// zlib level of Deflate and of IOStreams compressed on the wire, -1 is
+	// zlib's default and 0 keeps an IOStream from compressing.
+	public int compressionLevel = -1;
 }